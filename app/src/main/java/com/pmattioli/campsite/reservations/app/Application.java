@@ -5,11 +5,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaRepositories("com.pmattioli.campsite.reservations.data.repo")
 @ComponentScan("com.pmattioli.campsite.reservations")
 @EntityScan("com.pmattioli.campsite.reservations.data.repo")
+@EnableScheduling
 public class Application {
 
     public static void main(String[] args) {
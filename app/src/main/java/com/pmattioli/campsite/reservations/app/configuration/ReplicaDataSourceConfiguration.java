@@ -0,0 +1,84 @@
+package com.pmattioli.campsite.reservations.app.configuration;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+
+/**
+ * Sends read-only transactions to the read replica at {@code campsite.datasource.replica.url}, when
+ * set, and everything else to the {@code spring.datasource} primary database (see
+ * {@link ReplicaRoutingDataSource}).
+ * <p>
+ * Both data sources are pooled when a connection pool supported by Spring Boot is on the classpath,
+ * in which case the {@code campsite.datasource.replica} properties are bound to the replica pool.
+ * <p>
+ * Writes are recorded from the {@link ReservationEvent}s published once reservations are committed.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Configuration
+@ConditionalOnProperty(name = "campsite.datasource.replica.url")
+public class ReplicaDataSourceConfiguration {
+
+    // The primary and replica data sources aren't beans of their own, as every data source bean would
+    // be initialized with the schema scripts meant for the routing one
+    @Bean
+    @Primary
+    public DataSource dataSource(final DataSourceProperties properties, final Environment environment,
+            @Value("${campsite.datasource.replica.maximum-staleness-millis}") final long maximumStalenessMillis) {
+        DataSource primaryDataSource = build(properties.initializeDataSourceBuilder());
+        DataSource replicaDataSource = build(DataSourceBuilder.create());
+        Binder.get(environment).bind("campsite.datasource.replica", Bindable.ofInstance(replicaDataSource));
+
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primaryDataSource,
+                replicaDataSource, Duration.ofMillis(maximumStalenessMillis));
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public ReplicaWriteRecorder replicaWriteRecorder(final DataSource dataSource) throws SQLException {
+        return new ReplicaWriteRecorder(dataSource.unwrap(ReplicaRoutingDataSource.class));
+    }
+
+    private static DataSource build(final DataSourceBuilder<?> builder) {
+        if (DataSourceBuilder.findType(ReplicaDataSourceConfiguration.class.getClassLoader()) == null) {
+            builder.type(DriverManagerDataSource.class);
+        }
+        return builder.build();
+    }
+
+    static class ReplicaWriteRecorder {
+
+        private final ReplicaRoutingDataSource routingDataSource;
+
+        ReplicaWriteRecorder(final ReplicaRoutingDataSource routingDataSource) {
+            this.routingDataSource = routingDataSource;
+        }
+
+        @TransactionalEventListener(fallbackExecution = true)
+        public void onReservationEvent(final ReservationEvent event) {
+            routingDataSource.recordWrite();
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.pmattioli.campsite.reservations.app.configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes the connections of read-only transactions to a read replica, and every other connection to
+ * the primary database.
+ * <p>
+ * The replica lags behind the primary, so read-only transactions keep going to the primary until the
+ * given maximum staleness has elapsed since the last write of this instance was recorded with
+ * {@link #recordWrite()}, letting this instance read its own writes. Read-write transactions that
+ * don't change anything, such as the ones reading listings from the primary, aren't writes, so they
+ * don't keep read-only ones away from the replica. That delay doesn't measure the actual lag of
+ * the replica, nor does it account for writes made by other instances, so reads that mustn't be stale,
+ * such as the ones feeding caches invalidated on writes, have to run in read-write transactions.
+ * <p>
+ * The route is chosen when a connection is fetched, so this data source has to be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which only fetches it
+ * once the transaction has been set up.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Route {
+        PRIMARY, REPLICA
+    }
+
+    private final long maximumStalenessNanos;
+
+    private volatile long lastWriteNanos;
+
+    public ReplicaRoutingDataSource(final DataSource primary, final DataSource replica,
+            final Duration maximumStaleness) {
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        targetDataSources.put(Route.PRIMARY, primary);
+        targetDataSources.put(Route.REPLICA, replica);
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(primary);
+        this.maximumStalenessNanos = maximumStaleness.toNanos();
+        this.lastWriteNanos = System.nanoTime() - maximumStalenessNanos;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Route.PRIMARY;
+        }
+        if (System.nanoTime() - lastWriteNanos < maximumStalenessNanos) {
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+
+    /**
+     * Records that this instance just committed a write, which the replica might not have yet.
+     */
+    public void recordWrite() {
+        lastWriteNanos = System.nanoTime();
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.pmattioli.campsite.reservations.app.configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Hibernate second-level cache support for the 'l2cache' profile. The JCache provider only
+ * understands URLs, so a {@code classpath:} location set as {@value #CACHE_URI_PROPERTY} is
+ * resolved before the entity manager factory is built.
+ */
+@Configuration
+@Profile("l2cache")
+public class SecondLevelCacheConfiguration {
+
+    private static final String CACHE_URI_PROPERTY = "hibernate.javax.cache.uri";
+
+    @Bean
+    public static BeanPostProcessor cacheUriResolver() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(final Object bean, final String beanName) {
+                if (bean instanceof LocalContainerEntityManagerFactoryBean) {
+                    Map<String, Object> jpaProperties = ((LocalContainerEntityManagerFactoryBean) bean)
+                            .getJpaPropertyMap();
+                    Object uri = jpaProperties.get(CACHE_URI_PROPERTY);
+                    if (uri instanceof String && ((String) uri).startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)) {
+                        try {
+                            jpaProperties.put(CACHE_URI_PROPERTY,
+                                    new DefaultResourceLoader().getResource((String) uri).getURI().toString());
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException("Cache configuration not found: " + uri, ex);
+                        }
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+
+}
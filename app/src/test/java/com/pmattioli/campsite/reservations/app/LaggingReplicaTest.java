@@ -0,0 +1,115 @@
+package com.pmattioli.campsite.reservations.app;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+/**
+ * Routes transactions to a replica that never catches up: it's a database of its own, holding the
+ * schema of the primary but none of its rows.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lagging-primary;DB_CLOSE_DELAY=-1",
+        "campsite.datasource.replica.url=" + LaggingReplicaTest.REPLICA_URL,
+        "campsite.datasource.replica.maximum-staleness-millis=0" })
+@ActiveProfiles("replica")
+public class LaggingReplicaTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:lagging-replica;DB_CLOSE_DELAY=-1";
+
+    private static final Instant TODAY = Instant.now().truncatedTo(ChronoUnit.DAYS);
+
+    private static final Instant START_DATE_UTC = TODAY.plus(2, ChronoUnit.DAYS);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws IOException {
+        String schema = folder.newFile("schema.sql").getPath();
+        new JdbcTemplate(dataSource).execute("SCRIPT NODATA TO '" + schema + "'");
+
+        JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+        replica.execute("DROP ALL OBJECTS");
+        replica.execute("RUNSCRIPT FROM '" + schema + "'");
+    }
+
+    @After
+    public void tearDown() {
+        reservationRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testCachedListingIsLoadedFromPrimaryAfterWrite() {
+
+        Instant listingStartDate = TODAY.minus(1, ChronoUnit.DAYS);
+        assertEquals("Wrong number of reservations", 0,
+                reservationsService.listReservationsWithinTimeRange(listingStartDate, 6).size());
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Replica should lag behind", 0,
+                reservationsService.listReservationsWithinTimeRange(listingStartDate, 6, null, null)
+                        .getReservations().size());
+
+        List<Reservation> reservations = reservationsService.listReservationsWithinTimeRange(listingStartDate, 6);
+        assertEquals("Wrong number of reservations", 1, reservations.size());
+        assertEquals("Wrong reservation", reservation.getId(), reservations.get(0).getId());
+
+    }
+
+    @Test
+    public void testHistoryIsReadFromPrimary() {
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Martina", "Rossi", "martina.rossi@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        List<Reservation> reservations = reservationsService.listReservationHistoryWithinTimeRange(START_DATE_UTC, 3);
+
+        assertEquals("Wrong number of reservations", 1, reservations.size());
+        assertEquals("Wrong reservation", reservation.getId(), reservations.get(0).getId());
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.pmattioli.campsite.reservations.app;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNight;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNightRepository;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.BatchOperation;
+import com.pmattioli.campsite.reservations.service.BatchResult;
+import com.pmattioli.campsite.reservations.service.ReservationConflictException;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.service.index.EpochDays;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+/**
+ * Writes reservations through the service with the night table enabled, so overlapping reservations
+ * are rejected by its unique constraint rather than by a check before the write.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:night-table;DB_CLOSE_DELAY=-1",
+        "campsite.reservation.night-table.enabled=true" })
+public class NightTableTest {
+
+    private static final Instant START_DATE_UTC = EpochDays.toInstant(EpochDays.today()).plus(2, ChronoUnit.DAYS);
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @After
+    public void tearDown() {
+        reservationNightRepository.deleteAll();
+        reservationRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testCreateConflictingWithStoredNightsIsRejected() {
+
+        // Stored without going through the service, so only its nights tell the dates are taken
+        Reservation stored = reservationRepository.save(
+                ReservationTestUtil.createReservation(START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS)));
+        reservationNightRepository.saveAll(Arrays.asList(
+                new ReservationNight(LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC)), stored),
+                new ReservationNight(LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 1), stored)));
+
+        thrown.expect(ReservationConflictException.class);
+        thrown.expectMessage("An existing reservation conflicts with the selected dates");
+
+        try {
+            reservationsService.createReservation(
+                    ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"),
+                    START_DATE_UTC.plus(1, ChronoUnit.DAYS), START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+        } finally {
+            assertEquals("Rejected reservation shouldn't be stored", 1L, reservationRepository.count());
+            assertEquals("Rejected reservation nights shouldn't be stored", 2L, reservationNightRepository.count());
+        }
+
+    }
+
+    @Test
+    public void testUpdateMovesNightsOfReservation() {
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Martina", "Rossi", "martina.rossi@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        // Overlapping its own previous nights, which have to be released before the new ones are written
+        reservation.setStartDate(START_DATE_UTC.plus(1, ChronoUnit.DAYS));
+        reservation.setEndDate(START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+        reservationsService.updateReservation(reservation);
+
+        assertEquals("Wrong nights", Arrays.asList(LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 1),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 2)), storedNights());
+
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Lucia", "Gomez", "lucia.gomez@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(1, ChronoUnit.DAYS));
+
+        assertEquals("Released night should be bookable again", 3, storedNights().size());
+
+    }
+
+    @Test
+    public void testDeletedReservationDatesCanBeBookedAgain() {
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Sofia", "Ramos", "sofia.ramos@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        reservationsService.deleteReservation(reservation);
+
+        assertEquals("Nights of deleted reservation should be released", 0, storedNights().size());
+
+        Reservation rebooked = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Valentina", "Diaz", "valentina.diaz@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Wrong number of nights", 2, storedNights().size());
+        assertEquals("Wrong reservation", rebooked.getId(), reservationRepository.findAll().get(0).getId());
+
+    }
+
+    @Test
+    public void testBackToBackStaysOutsideOfMidnightDoNotConflict() {
+
+        // Checking in in the afternoon and out in the morning, as guests do
+        Instant checkIn = START_DATE_UTC.plus(14, ChronoUnit.HOURS);
+        Instant checkOut = START_DATE_UTC.plus(2, ChronoUnit.DAYS).plus(10, ChronoUnit.HOURS);
+
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Camila", "Lopez", "camila.lopez@disney.com"), checkIn, checkOut);
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Julieta", "Sosa", "julieta.sosa@disney.com"),
+                checkIn.plus(2, ChronoUnit.DAYS), checkOut.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Wrong nights", Arrays.asList(LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC)),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 1),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 2),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 3)), storedNights());
+
+    }
+
+    @Test
+    public void testBatchRejectsOperationsConflictingWithStoredNightsBeforeWriting() {
+
+        Reservation first = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Agustina", "Vera", "agustina.vera@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+        Reservation second = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Paula", "Luna", "paula.luna@disney.com"),
+                START_DATE_UTC.plus(3, ChronoUnit.DAYS), START_DATE_UTC.plus(5, ChronoUnit.DAYS));
+
+        // Onto the last night of the first reservation
+        second.setStartDate(START_DATE_UTC.plus(1, ChronoUnit.DAYS));
+        second.setEndDate(START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+        // Onto one of its own nights, which is released as it's moved
+        first.setStartDate(START_DATE_UTC.plus(1, ChronoUnit.DAYS));
+        first.setEndDate(START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+
+        List<BatchResult> results = reservationsService.applyBatch(Arrays.asList(BatchOperation.update(second),
+                BatchOperation.update(first),
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC.plus(5, ChronoUnit.DAYS),
+                        START_DATE_UTC.plus(7, ChronoUnit.DAYS), ReservationTestUtil.createUser("Paula", "Luna",
+                                "paula.luna@disney.com")))));
+
+        assertEquals("Wrong error", ReservationConflictException.class, results.get(0).getError().getClass());
+        assertTrue("Reservation should be moved", results.get(1).isApplied());
+        assertTrue("Reservation should be created", results.get(2).isApplied());
+        assertEquals("Wrong nights", Arrays.asList(LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 1),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 2),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 3),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 4),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 5),
+                LocalDate.ofEpochDay(EpochDays.floor(START_DATE_UTC) + 6)), storedNights());
+
+    }
+
+    private List<LocalDate> storedNights() {
+        return reservationNightRepository.findAll().stream().map(ReservationNight::getNight).sorted()
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.pmattioli.campsite.reservations.app;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.ReservationConflictException;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.service.index.EpochDays;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+/**
+ * Writes reservations through the service with the occupancy index enabled, so availability is only
+ * checked against the index, which has to follow every committed change.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:occupancy-index;DB_CLOSE_DELAY=-1",
+        "campsite.reservation.occupancy-index.enabled=true",
+        "campsite.reservation.sites.count=3" })
+public class OccupancyIndexEnabledTest {
+
+    private static final Instant START_DATE_UTC = EpochDays.toInstant(EpochDays.today()).plus(2, ChronoUnit.DAYS);
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @After
+    public void tearDown() {
+        for (Reservation reservation : reservationRepository.findAll()) {
+            reservationsService.deleteReservation(reservation);
+        }
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testCreateConflictingWithCommittedReservationIsRejected() {
+
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        thrown.expect(ReservationConflictException.class);
+        thrown.expectMessage("An existing reservation conflicts with the selected dates");
+
+        try {
+            reservationsService.createReservation(
+                    ReservationTestUtil.createUser("Martina", "Rossi", "martina.rossi@disney.com"),
+                    START_DATE_UTC.plus(1, ChronoUnit.DAYS), START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+        } finally {
+            assertEquals("Rejected reservation shouldn't be stored", 1L, reservationRepository.count());
+        }
+
+    }
+
+    @Test
+    public void testUpdatedReservationReleasesItsPreviousDates() {
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Lucia", "Gomez", "lucia.gomez@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        reservation.setStartDate(START_DATE_UTC.plus(4, ChronoUnit.DAYS));
+        reservation.setEndDate(START_DATE_UTC.plus(6, ChronoUnit.DAYS));
+        reservationsService.updateReservation(reservation);
+
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Sofia", "Ramos", "sofia.ramos@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        thrown.expect(ReservationConflictException.class);
+
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Valentina", "Diaz", "valentina.diaz@disney.com"),
+                START_DATE_UTC.plus(5, ChronoUnit.DAYS), START_DATE_UTC.plus(7, ChronoUnit.DAYS));
+
+    }
+
+    @Test
+    public void testDeletedReservationDatesCanBeBookedAgain() {
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Camila", "Lopez", "camila.lopez@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        reservationsService.deleteReservation(reservation);
+
+        Reservation rebooked = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Julieta", "Sosa", "julieta.sosa@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Wrong reservation", rebooked.getId(), reservationRepository.findAll().get(0).getId());
+
+    }
+
+    @Test
+    public void testAvailableSitesFollowCommittedReservations() {
+
+        reservationsService.createReservation(2L,
+                ReservationTestUtil.createUser("Agustina", "Vera", "agustina.vera@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Wrong available sites", Arrays.asList(1L, 3L),
+                reservationsService.listAvailableSites(START_DATE_UTC, 3));
+        assertEquals("Wrong available sites", Arrays.asList(1L, 2L, 3L),
+                reservationsService.listAvailableSites(START_DATE_UTC.plus(2, ChronoUnit.DAYS), 3));
+
+    }
+
+}
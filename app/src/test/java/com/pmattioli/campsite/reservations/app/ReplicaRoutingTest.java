@@ -0,0 +1,94 @@
+package com.pmattioli.campsite.reservations.app;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.ReservationPage;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+/**
+ * Routes transactions with the 'replica' profile active. The replica connects to the same in-memory
+ * database as the primary, as a different user, so the user of a connection tells where it was routed.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1;"
+                + "INIT=CREATE USER IF NOT EXISTS REPLICA PASSWORD '' ADMIN",
+        "campsite.datasource.replica.url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1",
+        "campsite.datasource.replica.username=replica",
+        "campsite.datasource.replica.maximum-staleness-millis=0" })
+@ActiveProfiles("replica")
+public class ReplicaRoutingTest {
+
+    private static final Instant START_DATE_UTC = Instant.now().truncatedTo(ChronoUnit.DAYS).plus(2, ChronoUnit.DAYS);
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @After
+    public void tearDown() {
+        reservationRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testReadOnlyTransactionsAreRoutedToReplica() {
+
+        assertEquals("Wrong database user", "REPLICA", readDatabaseUser(true));
+        assertEquals("Wrong database user", "SA", readDatabaseUser(false));
+
+    }
+
+    @Test
+    public void testListingSeesReservationsWrittenToPrimary() {
+
+        Reservation reservation = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"),
+                START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        ReservationPage page = reservationsService.listReservationsWithinTimeRange(START_DATE_UTC, 3, null, null);
+
+        assertEquals("Wrong number of reservations", 1, page.getReservations().size());
+        assertEquals("Wrong reservation", reservation.getId(), page.getReservations().get(0).getId());
+
+    }
+
+    private String readDatabaseUser(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+                new JdbcTemplate(dataSource).queryForObject("SELECT USER()", String.class));
+    }
+
+}
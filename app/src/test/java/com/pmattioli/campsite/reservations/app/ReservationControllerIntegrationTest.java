@@ -2,12 +2,14 @@ package com.pmattioli.campsite.reservations.app;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.Instant;
@@ -18,7 +20,6 @@ import javax.transaction.Transactional;
 import org.apache.logging.log4j.util.Strings;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
@@ -29,12 +30,16 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pmattioli.campsite.reservations.controller.exception.ExceptionConverter;
 import com.pmattioli.campsite.reservations.controller.model.ReservationJson;
+import com.pmattioli.campsite.reservations.controller.model.ReservationMapper;
 import com.pmattioli.campsite.reservations.data.repo.Reservation;
 import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
 import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
 
 @RunWith(SpringRunner.class)
@@ -61,11 +66,14 @@ public class ReservationControllerIntegrationTest {
     @Autowired
     private TestEntityManager entityManager;
 
+    @Autowired
+    private UserRepository userRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private ReservationMapper reservationMapper;
 
     private final ExceptionConverter exConverter = new ExceptionConverter(this);
 
@@ -168,9 +176,9 @@ public class ReservationControllerIntegrationTest {
         Reservation thirdRsv = ReservationTestUtil.createReservation(thirdRsvStartDate,
                 thirdRsvStartDate.plus(campsiteReservationLengthMaximum, ChronoUnit.DAYS), user);
 
-        ReservationJson thirdRsvJson = modelMapper.map(thirdRsv, ReservationJson.class);
+        ReservationJson thirdRsvJson = reservationMapper.toJson(thirdRsv);
 
-        mvc.perform(post("/v1/reservations")
+        performAsync(post("/v1/reservations")
                 .content(objectMapper.writeValueAsString(thirdRsvJson))
                 .accept(MediaType.APPLICATION_JSON)
                 .contentType(MediaType.APPLICATION_JSON))
@@ -191,9 +199,9 @@ public class ReservationControllerIntegrationTest {
 
         Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate, user);
 
-        ReservationJson reservationJson = modelMapper.map(reservation, ReservationJson.class);
+        ReservationJson reservationJson = reservationMapper.toJson(reservation);
 
-        mvc.perform(post("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
+        performAsync(post("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
@@ -209,11 +217,11 @@ public class ReservationControllerIntegrationTest {
         Reservation reservation =
                 createReservation(TODAY, END_DATE_UTC, user);
 
-        ReservationJson reservationJson = modelMapper.map(reservation, ReservationJson.class);
+        ReservationJson reservationJson = reservationMapper.toJson(reservation);
 
         reservationJson.setEndDate(END_DATE_UTC.plus(2, ChronoUnit.DAYS));
 
-        mvc.perform(put("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
+        performAsync(put("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
@@ -234,16 +242,16 @@ public class ReservationControllerIntegrationTest {
 
         Reservation conflictsWithEndDateReservation = createReservation(conflictingStartDate, conflictingEndDate, user);
 
-        ReservationJson reservationJson = modelMapper.map(conflictsWithEndDateReservation, ReservationJson.class);
+        ReservationJson reservationJson = reservationMapper.toJson(conflictsWithEndDateReservation);
 
         // Create second reservation which should conflict with the first one
 
         Reservation secondRsv = ReservationTestUtil.createReservation(conflictingStartDate.minus(1, ChronoUnit.DAYS),
                 conflictingEndDate.minus(1, ChronoUnit.DAYS), user);
 
-        ReservationJson secondRsvJson = modelMapper.map(secondRsv, ReservationJson.class);
+        ReservationJson secondRsvJson = reservationMapper.toJson(secondRsv);
 
-        mvc.perform(post("/v1/reservations").content(objectMapper.writeValueAsString(secondRsvJson))
+        performAsync(post("/v1/reservations").content(objectMapper.writeValueAsString(secondRsvJson))
                 .accept(MediaType.APPLICATION_JSON)
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isConflict())
@@ -253,7 +261,7 @@ public class ReservationControllerIntegrationTest {
 
         // Delete first reservation
 
-        mvc.perform(delete("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
+        performAsync(delete("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNoContent())
@@ -261,7 +269,7 @@ public class ReservationControllerIntegrationTest {
 
         // And now a new attempt to create the second reservation should be successful
 
-        mvc.perform(post("/v1/reservations").content(objectMapper.writeValueAsString(secondRsvJson))
+        performAsync(post("/v1/reservations").content(objectMapper.writeValueAsString(secondRsvJson))
                 .accept(MediaType.APPLICATION_JSON)
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
@@ -277,11 +285,11 @@ public class ReservationControllerIntegrationTest {
         Reservation reservation =
                 createReservation(TODAY, END_DATE_UTC, user);
 
-        ReservationJson reservationJson = modelMapper.map(reservation, ReservationJson.class);
+        ReservationJson reservationJson = reservationMapper.toJson(reservation);
 
         reservationJson.setEndDate(END_DATE_UTC.plus(2, ChronoUnit.DAYS));
 
-        mvc.perform(put("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
+        performAsync(put("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
@@ -291,15 +299,24 @@ public class ReservationControllerIntegrationTest {
 
         entityManager.flush();
 
-        mvc.perform(put("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
+        performAsync(put("/v1/reservations").content(objectMapper.writeValueAsString(reservationJson))
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isConflict())
                 .andExpect(jsonPath("errors[0].error_code", is("409")));
     }
 
+    /**
+     * Performs a request handled asynchronously, and dispatches it again once its result is ready.
+     */
+    private ResultActions performAsync(final MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        return mvc.perform(asyncDispatch(mvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn()));
+    }
+
     private Reservation createReservation(Instant startDate, Instant endDate, User user) {
-        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate, user);
+        // Users are unique by email, and a previous test might have stored this one already
+        User storedUser = userRepository.findByEmail(user.getEmail()).orElse(user);
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate, storedUser);
         return entityManager.merge(reservation);
     }
 
@@ -0,0 +1,110 @@
+package com.pmattioli.campsite.reservations.app;
+
+import static org.junit.Assert.assertFalse;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+/**
+ * Counts the statements sent to the database by the available sites and update paths with the
+ * 'l2cache' profile active.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:l2cache",
+        "spring.jpa.properties.hibernate.generate_statistics=true" })
+@ActiveProfiles("l2cache")
+public class SecondLevelCacheTest {
+
+    private static final Instant START_DATE_UTC = Instant.now().truncatedTo(ChronoUnit.DAYS).plus(2, ChronoUnit.DAYS);
+    private static final Instant END_DATE_UTC = START_DATE_UTC.plus(2, ChronoUnit.DAYS);
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Reservation existingReservation;
+
+    @Before
+    public void setUp() {
+        existingReservation = reservationRepository.save(ReservationTestUtil.createReservation(START_DATE_UTC,
+                END_DATE_UTC, ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com")));
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @After
+    public void tearDown() {
+        reservationRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testRepeatedAvailableSitesAreServedFromQueryCache() {
+
+        reservationsService.listAvailableSites(START_DATE_UTC, 2);
+        long statementsForFirstQuery = statistics.getPrepareStatementCount();
+
+        reservationsService.listAvailableSites(START_DATE_UTC, 2);
+
+        assertEquals("Repeated query shouldn't hit the database", statementsForFirstQuery,
+                statistics.getPrepareStatementCount());
+        assertEquals("Wrong query cache hit count", 1L, statistics.getQueryCacheHitCount());
+    }
+
+    @Test
+    public void testWriteInvalidatesCachedAvailableSites() {
+
+        assertFalse("Occupied site shouldn't be available",
+                reservationsService.listAvailableSites(START_DATE_UTC, 2).contains(existingReservation.getSiteId()));
+
+        reservationRepository.delete(existingReservation);
+
+        assertTrue("Released site should be available",
+                reservationsService.listAvailableSites(START_DATE_UTC, 2).contains(existingReservation.getSiteId()));
+    }
+
+    @Test
+    public void testUpdateOnlySendsUpdateStatement() {
+
+        Reservation staleCopy = ReservationTestUtil.copy(existingReservation);
+        staleCopy.setEndDate(END_DATE_UTC.plus(1, ChronoUnit.DAYS));
+
+        reservationRepository.save(staleCopy);
+
+        assertEquals("Merging should load the reservation from the second-level cache", 1L,
+                statistics.getPrepareStatementCount());
+    }
+
+}
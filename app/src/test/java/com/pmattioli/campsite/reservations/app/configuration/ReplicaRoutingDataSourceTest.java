@@ -0,0 +1,116 @@
+package com.pmattioli.campsite.reservations.app.configuration;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Routes transactions between two local H2 databases, each one telling its name.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+
+    private DataSource replica;
+
+    @Before
+    public void setUp() {
+        primary = createDatabase("primary");
+        replica = createDatabase("replica");
+    }
+
+    @Test
+    public void testReadOnlyTransactionsGoToReplica() {
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(createRoutingDataSource(Duration.ofHours(1)));
+
+        assertEquals("Wrong database", "replica", readDatabaseName(dataSource, true));
+
+    }
+
+    @Test
+    public void testReadWriteTransactionsGoToPrimary() {
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(createRoutingDataSource(Duration.ofHours(1)));
+
+        assertEquals("Wrong database", "primary", readDatabaseName(dataSource, false));
+
+    }
+
+    @Test
+    public void testReadsOutsideOfTransactionsGoToPrimary() {
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(createRoutingDataSource(Duration.ofHours(1)));
+
+        assertEquals("Wrong database", "primary",
+                new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+
+    }
+
+    @Test
+    public void testReadOnlyTransactionsGoToPrimaryWithinStalenessOfWrite() {
+
+        ReplicaRoutingDataSource routingDataSource = createRoutingDataSource(Duration.ofHours(1));
+        routingDataSource.recordWrite();
+
+        assertEquals("Replica might not have the write yet", "primary",
+                readDatabaseName(new LazyConnectionDataSourceProxy(routingDataSource), true));
+
+    }
+
+    @Test
+    public void testReadOnlyTransactionsGoBackToReplicaOnceStalenessElapses() {
+
+        ReplicaRoutingDataSource routingDataSource = createRoutingDataSource(Duration.ZERO);
+        routingDataSource.recordWrite();
+
+        assertEquals("Wrong database", "replica",
+                readDatabaseName(new LazyConnectionDataSourceProxy(routingDataSource), true));
+
+    }
+
+    @Test
+    public void testReadWriteTransactionsWithoutWritesDontKeepReadsOnPrimary() {
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(createRoutingDataSource(Duration.ofHours(1)));
+        readDatabaseName(dataSource, false);
+
+        assertEquals("Wrong database", "replica", readDatabaseName(dataSource, true));
+
+    }
+
+    private ReplicaRoutingDataSource createRoutingDataSource(Duration maximumStaleness) {
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, replica,
+                maximumStaleness);
+        routingDataSource.afterPropertiesSet();
+        return routingDataSource;
+    }
+
+    private static String readDatabaseName(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+                new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private static DataSource createDatabase(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1",
+                "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(16))");
+        jdbcTemplate.update("DELETE FROM node");
+        jdbcTemplate.update("INSERT INTO node (name) VALUES (?)", name);
+        return dataSource;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.pmattioli.campsite.reservations.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Adapts the futures returned by {@link com.pmattioli.campsite.reservations.service.AsyncReservationsService}
+ * to {@link DeferredResult}s. Failures are passed on unwrapped, so they reach the exception handlers
+ * just like the ones thrown by synchronous handler methods.
+ */
+final class AsyncResults {
+
+    private AsyncResults() {}
+
+    static <T, R> DeferredResult<R> deferred(final CompletableFuture<T> future, final Function<T, R> mapper) {
+        DeferredResult<R> result = new DeferredResult<>();
+        future.whenComplete((value, ex) -> {
+            if (ex != null) {
+                result.setErrorResult(ex);
+                return;
+            }
+            try {
+                result.setResult(mapper.apply(value));
+            } catch (RuntimeException mappingEx) {
+                result.setErrorResult(mappingEx);
+            }
+        });
+        return result;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.pmattioli.campsite.reservations.controller;
+
+import static com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes.APPLICATION_CBOR_VALUE;
+import static com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pmattioli.campsite.reservations.controller.model.DateRangeJson;
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+
+@RestController
+@RequestMapping("/v1/availability")
+public class AvailabilityController {
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @GetMapping(produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public ResponseEntity<List<DateRangeJson>> listAvailableDateRanges(@RequestParam(value="startDate") String startDate,
+            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays,
+            @RequestParam(value="siteId", required = false) Long siteId) {
+
+        Assert.isTrue(startDate.length() > 0, "Start date parameter cannot be null or empty");
+
+        List<DateRange> availableRanges =
+                reservationsService.listAvailableDateRanges(siteId, Instant.parse(startDate), numberOfDays);
+
+        List<DateRangeJson> response = new ArrayList<>(availableRanges.size());
+        for (DateRange availableRange : availableRanges) {
+            response.add(new DateRangeJson(availableRange.getStartDate(), availableRange.getEndDate()));
+        }
+
+        return ResponseEntity.ok(response);
+
+    }
+
+    @GetMapping(path = "/sites", produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public ResponseEntity<List<Long>> listAvailableSites(@RequestParam(value="startDate") String startDate,
+            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays) {
+
+        Assert.isTrue(startDate.length() > 0, "Start date parameter cannot be null or empty");
+
+        return ResponseEntity.ok(reservationsService.listAvailableSites(Instant.parse(startDate), numberOfDays));
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.pmattioli.campsite.reservations.controller;
+
+import static com.pmattioli.campsite.reservations.controller.AsyncResults.deferred;
+import static com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes.APPLICATION_CBOR_VALUE;
+import static com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.pmattioli.campsite.reservations.controller.configuration.ReservationControllerConfiguration;
+import com.pmattioli.campsite.reservations.controller.exception.ExceptionConverter;
+import com.pmattioli.campsite.reservations.controller.model.BatchOperationJson;
+import com.pmattioli.campsite.reservations.controller.model.BatchResultJson;
+import com.pmattioli.campsite.reservations.controller.model.ReservationMapper;
+import com.pmattioli.campsite.reservations.service.AsyncReservationsService;
+import com.pmattioli.campsite.reservations.service.BatchOperation;
+import com.pmattioli.campsite.reservations.service.BatchResult;
+
+/**
+ * Applies batches of reservation operations in a single request and transaction. The batch as a
+ * whole is accepted with a 200 status, and every operation gets its own status and error, matching
+ * the ones its single counterpart in {@link ReservationController} would have responded with.
+ */
+@RestController
+@Import(ReservationControllerConfiguration.class)
+public class ReservationBatchController {
+
+    @Autowired
+    private AsyncReservationsService asyncReservationsService;
+
+    @Autowired
+    private ReservationMapper reservationMapper;
+
+    private final ExceptionConverter exConverter = new ExceptionConverter(this);
+
+    @PostMapping(path = "/v1/reservations:batch",
+            consumes = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE },
+            produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public DeferredResult<ResponseEntity<List<BatchResultJson>>> applyBatch(
+            @RequestBody List<BatchOperationJson> request) {
+
+        // Operations that can't even be mapped are rejected here, the rest go to the service together
+        BatchResultJson[] response = new BatchResultJson[request.size()];
+        List<BatchOperation> operations = new ArrayList<>(request.size());
+        List<Integer> operationIndexes = new ArrayList<>(request.size());
+        for (int i = 0; i < request.size(); i++) {
+            try {
+                operations.add(toOperation(request.get(i)));
+                operationIndexes.add(i);
+            } catch (IllegalArgumentException ex) {
+                response[i] = rejected(ex);
+            }
+        }
+
+        CompletableFuture<List<BatchResult>> results = operations.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyList())
+                : asyncReservationsService.applyBatch(operations);
+        return deferred(results, appliedResults -> {
+            for (int i = 0; i < appliedResults.size(); i++) {
+                response[operationIndexes.get(i)] = toJson(operations.get(i).getType(), appliedResults.get(i));
+            }
+            return ResponseEntity.ok(Arrays.asList(response));
+        });
+
+    }
+
+    private BatchOperation toOperation(final BatchOperationJson json) {
+        Assert.notNull(json.getOperation(), "Operation cannot be null");
+        Assert.notNull(json.getReservation(), "Reservation cannot be null");
+
+        BatchOperation.Type type;
+        try {
+            type = BatchOperation.Type.valueOf(json.getOperation().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid operation: " + json.getOperation()
+                    + ". Operations: create, update, delete");
+        }
+
+        return new BatchOperation(type, reservationMapper.toReservation(json.getReservation()));
+    }
+
+    private BatchResultJson toJson(final BatchOperation.Type type, final BatchResult result) {
+        if (!result.isApplied()) {
+            return rejected(result.getError());
+        }
+        BatchResultJson json = new BatchResultJson();
+        if (type == BatchOperation.Type.DELETE) {
+            json.setStatus(HttpStatus.NO_CONTENT.value());
+        } else {
+            json.setStatus(HttpStatus.OK.value());
+            json.setReservation(reservationMapper.toJson(result.getReservation()));
+        }
+        return json;
+    }
+
+    private BatchResultJson rejected(final RuntimeException ex) {
+        HttpStatus status = ex instanceof IllegalArgumentException ? HttpStatus.BAD_REQUEST : HttpStatus.CONFLICT;
+        BatchResultJson json = new BatchResultJson();
+        json.setStatus(status.value());
+        json.setError(exConverter.toBuilder(ex).errorCode(Integer.toString(status.value())).build());
+        return json;
+    }
+
+}
@@ -1,24 +1,25 @@
 package com.pmattioli.campsite.reservations.controller;
 
-import static com.pmattioli.campsite.reservations.controller.exception.ResponseUtils.badRequest;
-import static com.pmattioli.campsite.reservations.controller.exception.ResponseUtils.conflict;
-import static com.pmattioli.campsite.reservations.controller.exception.ResponseUtils.internalError;
+import static com.pmattioli.campsite.reservations.controller.AsyncResults.deferred;
+import static com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes.APPLICATION_CBOR_VALUE;
+import static com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes.APPLICATION_SMILE_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
-import org.modelmapper.ModelMapper;
-import org.modelmapper.TypeToken;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.DeleteMapping;
-import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -26,13 +27,22 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes;
 import com.pmattioli.campsite.reservations.controller.configuration.ReservationControllerConfiguration;
-import com.pmattioli.campsite.reservations.controller.exception.ExceptionConverter;
 import com.pmattioli.campsite.reservations.controller.model.ReservationJson;
+import com.pmattioli.campsite.reservations.controller.model.ReservationJsonFragments;
+import com.pmattioli.campsite.reservations.controller.model.ReservationMapper;
+import com.pmattioli.campsite.reservations.controller.model.ReservationPageJson;
 import com.pmattioli.campsite.reservations.data.repo.Reservation;
 import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.service.AsyncReservationsService;
+import com.pmattioli.campsite.reservations.service.ReservationCursor;
 import com.pmattioli.campsite.reservations.service.ReservationsService;
 
 @RestController
@@ -40,73 +50,148 @@ import com.pmattioli.campsite.reservations.service.ReservationsService;
 @Import(ReservationControllerConfiguration.class)
 public class ReservationController {
 
-    private static final Logger LOG = LoggerFactory.getLogger(ReservationController.class);
+    @Autowired
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private AsyncReservationsService asyncReservationsService;
 
-    private final ExceptionConverter exConverter = new ExceptionConverter(this);
+    @Autowired
+    private ReservationMapper reservationMapper;
 
     @Autowired
-    private ReservationsService reservationsService;
+    private ReservationJsonFragments jsonFragments;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private ObjectMapper objectMapper;
 
-    @GetMapping(produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<ReservationJson>> listReservationsWithinTimeRange(@RequestParam(value="startDate") String startDate,
-            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays) {
+    @GetMapping(produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public ResponseEntity<?> listReservationsWithinTimeRange(@RequestParam(value="startDate") String startDate,
+            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays, WebRequest webRequest,
+            HttpServletResponse servletResponse) {
 
         Assert.isTrue(startDate.length() > 0, "Start date parameter cannot be null or empty");
 
-        List<Reservation> reservations =
-                reservationsService.listReservationsWithinTimeRange(Instant.parse(startDate), numberOfDays);
+        // Every format gets an ETag of its own, and caches are told the body depends on the Accept header,
+        // so a client is never handed a listing it validated in another format
+        MediaType preferredType = BinaryMediaTypes.preferredBy(webRequest.getHeader(HttpHeaders.ACCEPT));
+        servletResponse.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
 
-        return ResponseEntity.ok(modelMapper.map(reservations, new TypeToken<List<ReservationJson>>() {}.getType()));
+        // Read once, for both the ETag and the listing
+        long calendarVersion = reservationsService.getCalendarVersion(Instant.parse(startDate), numberOfDays);
+        if (webRequest.checkNotModified(calendarVersion + "-" + preferredType.getSubtype())) {
+            return null;
+        }
 
-    }
+        List<Reservation> reservations = reservationsService.listReservationsWithinTimeRange(Instant.parse(startDate),
+                numberOfDays, calendarVersion);
 
-    @PostMapping(consumes =  APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<ReservationJson> createReservation(@RequestBody ReservationJson request) {
+        // Cached JSON fragments can only be served as JSON, binary formats are serialized as usual
+        if (MediaType.APPLICATION_JSON.equals(preferredType)) {
+            return ResponseEntity.ok(jsonFragments.listingOf(reservations));
+        }
 
-        User user = modelMapper.map(request.getUser(), User.class);
+        List<ReservationJson> response = new ArrayList<>(reservations.size());
+        for (Reservation reservation : reservations) {
+            response.add(reservationMapper.toJson(reservation));
+        }
 
-        Reservation reservation =
-                reservationsService.createReservation(user, request.getStartDate(), request.getEndDate());
+        return ResponseEntity.ok(response);
+
+    }
+
+    @GetMapping(path = "/page", produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public DeferredResult<ResponseEntity<ReservationPageJson>> listReservationPageWithinTimeRange(
+            @RequestParam(value="startDate") String startDate,
+            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays,
+            @RequestParam(value="pageSize", required = false) Integer pageSize,
+            @RequestParam(value="cursor", required = false) String cursor) {
+
+        Assert.isTrue(startDate.length() > 0, "Start date parameter cannot be null or empty");
 
-        return ResponseEntity.ok(modelMapper.map(reservation, ReservationJson.class));
+        return deferred(asyncReservationsService.listReservationsWithinTimeRange(Instant.parse(startDate),
+                numberOfDays, cursor == null ? null : ReservationCursor.decode(cursor), pageSize),
+                page -> ResponseEntity.ok(reservationMapper.toJson(page)));
 
     }
 
-    @PutMapping(consumes =  APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<ReservationJson> updateReservation(@RequestBody ReservationJson request) {
+    @GetMapping(path = "/stream", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamReservationsWithinTimeRange(
+            @RequestParam(value="startDate") String startDate,
+            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays) {
 
-        Reservation updatedReservation =
-                reservationsService.updateReservation(modelMapper.map(request, Reservation.class));
+        Assert.isTrue(startDate.length() > 0, "Start date parameter cannot be null or empty");
 
-        return ResponseEntity.ok(modelMapper.map(updatedReservation, ReservationJson.class));
+        Instant start = Instant.parse(startDate);
+
+        // Each reservation is written as it's read from the database, and the opening bracket is
+        // flushed right away, so the response starts before the query completes
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                generator.flush();
+                reservationsService.forEachReservationWithinTimeRange(start, numberOfDays, reservation -> {
+                    try {
+                        generator.writeObject(reservationMapper.toJson(reservation));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+
+        return ResponseEntity.ok(body);
 
     }
 
-    @DeleteMapping(consumes =  APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<ReservationJson> deleteReservation(@RequestBody ReservationJson request) {
+    @GetMapping(path = "/history", produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public ResponseEntity<List<ReservationJson>> listReservationHistoryWithinTimeRange(
+            @RequestParam(value="startDate") String startDate,
+            @RequestParam(value="numberOfDays", required = false) Integer numberOfDays) {
+
+        Assert.isTrue(startDate.length() > 0, "Start date parameter cannot be null or empty");
+
+        List<Reservation> reservations =
+                reservationsService.listReservationHistoryWithinTimeRange(Instant.parse(startDate), numberOfDays);
 
-        reservationsService.deleteReservation(modelMapper.map(request, Reservation.class));
+        List<ReservationJson> response = new ArrayList<>(reservations.size());
+        for (Reservation reservation : reservations) {
+            response.add(reservationMapper.toJson(reservation));
+        }
 
-        return ResponseEntity.noContent().build();
+        return ResponseEntity.ok(response);
 
     }
 
-    @ExceptionHandler(IllegalArgumentException.class)
-    public ResponseEntity<JsonNode> handleIllegalArgumentException(final IllegalArgumentException ex) {
-        return badRequest(exConverter.toBuilder(ex).errorCode("400").wrap());
+    @PostMapping(consumes = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE },
+            produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public DeferredResult<ResponseEntity<ReservationJson>> createReservation(@RequestBody ReservationJson request) {
+
+        Assert.notNull(request.getUser(), "User cannot be null");
+        User user = reservationMapper.toUser(request.getUser());
+
+        return deferred(asyncReservationsService.createReservation(request.getSiteId(), user,
+                request.getStartDate(), request.getEndDate()),
+                reservation -> ResponseEntity.ok(reservationMapper.toJson(reservation)));
+
     }
 
-    @ExceptionHandler({IllegalStateException.class, ObjectOptimisticLockingFailureException.class})
-    public ResponseEntity<JsonNode> handleIllegalStateException(final RuntimeException ex) {
-        return conflict(exConverter.toBuilder(ex).errorCode("409").wrap());
+    @PutMapping(consumes = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE },
+            produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public DeferredResult<ResponseEntity<ReservationJson>> updateReservation(@RequestBody ReservationJson request) {
+
+        return deferred(asyncReservationsService.updateReservation(reservationMapper.toReservation(request)),
+                updatedReservation -> ResponseEntity.ok(reservationMapper.toJson(updatedReservation)));
+
     }
 
-    @ExceptionHandler(RuntimeException.class)
-    public ResponseEntity handleUnexpectedException(final RuntimeException ex) {
-        LOG.error("An unexpected error occurred: ", ex);
-        return internalError(exConverter.toBuilder(ex).errorCode("500").wrap());
+    @DeleteMapping(consumes = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE },
+            produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE })
+    public DeferredResult<ResponseEntity<ReservationJson>> deleteReservation(@RequestBody ReservationJson request) {
+
+        return deferred(asyncReservationsService.deleteReservation(reservationMapper.toReservation(request)),
+                deleted -> ResponseEntity.noContent().build());
+
     }
 }
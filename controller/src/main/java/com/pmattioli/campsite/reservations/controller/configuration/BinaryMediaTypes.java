@@ -0,0 +1,58 @@
+package com.pmattioli.campsite.reservations.controller.configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * Binary, JSON-compatible media types served alongside {@code application/json}. They share the
+ * JSON field names, while instants are exchanged as epoch milliseconds rather than ISO-8601 strings.
+ */
+public final class BinaryMediaTypes {
+
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf(APPLICATION_CBOR_VALUE);
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    private static final List<MediaType> SUPPORTED_TYPES =
+            Arrays.asList(MediaType.APPLICATION_JSON, APPLICATION_CBOR, APPLICATION_SMILE);
+
+    private BinaryMediaTypes() {}
+
+    /**
+     * Tells which of JSON, CBOR and Smile is preferred by the given {@code Accept} header, favoring
+     * JSON when none of them is preferred over the others.
+     *
+     * @param accept the {@code Accept} header of a request, possibly {@code null}
+     * @return the preferred media type, {@code application/json} by default
+     */
+    public static MediaType preferredBy(final String accept) {
+        if (accept == null) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+
+        for (MediaType acceptedType : acceptedTypes) {
+            for (MediaType supportedType : SUPPORTED_TYPES) {
+                if (acceptedType.includes(supportedType)) {
+                    return supportedType;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+}
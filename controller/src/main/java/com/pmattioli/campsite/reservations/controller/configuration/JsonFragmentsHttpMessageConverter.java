@@ -0,0 +1,49 @@
+package com.pmattioli.campsite.reservations.controller.configuration;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import com.pmattioli.campsite.reservations.controller.model.JsonFragments;
+
+/**
+ * Writes {@link JsonFragments} straight into the response body, without going through Jackson.
+ */
+public class JsonFragmentsHttpMessageConverter extends AbstractHttpMessageConverter<JsonFragments> {
+
+    public JsonFragmentsHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON_UTF8, MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(final Class<?> clazz) {
+        return JsonFragments.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(final MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected JsonFragments readInternal(final Class<? extends JsonFragments> clazz,
+            final HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("JSON fragments can only be written");
+    }
+
+    @Override
+    protected Long getContentLength(final JsonFragments fragments, final MediaType contentType) {
+        return fragments.getContentLength();
+    }
+
+    @Override
+    protected void writeInternal(final JsonFragments fragments, final HttpOutputMessage outputMessage)
+            throws IOException {
+        fragments.writeTo(outputMessage.getBody());
+    }
+
+}
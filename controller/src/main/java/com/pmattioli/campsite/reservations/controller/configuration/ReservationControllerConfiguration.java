@@ -1,15 +1,58 @@
 package com.pmattioli.campsite.reservations.controller.configuration;
 
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.pmattioli.campsite.reservations.controller.model.ReservationJsonFragments;
+import com.pmattioli.campsite.reservations.controller.model.ReservationMapper;
 
 @Configuration
 public class ReservationControllerConfiguration {
 
+    @Value("${campsite.reservation.list.json-cache.maximum-size}")
+    private int jsonCacheMaximumSize;
+
+    @Bean
+    public ReservationMapper reservationMapper() {
+        return new ReservationMapper();
+    }
+
+    @Bean
+    public ReservationJsonFragments reservationJsonFragments(final ObjectMapper objectMapper) {
+        return new ReservationJsonFragments(objectMapper, reservationMapper(), jsonCacheMaximumSize);
+    }
+
     @Bean
-    public ModelMapper modelMapper () {
-        return new ModelMapper();
+    public JsonFragmentsHttpMessageConverter jsonFragmentsHttpMessageConverter() {
+        return new JsonFragmentsHttpMessageConverter();
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter() {
+        return new MappingJackson2CborHttpMessageConverter(binaryObjectMapper(Jackson2ObjectMapperBuilder.cbor()));
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter() {
+        return new MappingJackson2SmileHttpMessageConverter(binaryObjectMapper(Jackson2ObjectMapperBuilder.smile()));
+    }
+
+    /**
+     * Binary formats exchange instants as epoch milliseconds, which are encoded as plain integers
+     * instead of strings that need to be parsed.
+     */
+    private static ObjectMapper binaryObjectMapper(final Jackson2ObjectMapperBuilder builder) {
+        return builder.featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .featuresToDisable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS,
+                        DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS)
+                .build();
     }
 
 }
@@ -0,0 +1,57 @@
+package com.pmattioli.campsite.reservations.controller.exception;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes;
+
+/**
+ * Error responses serialized once per error code, message and media type, so answering an expected
+ * rejection again builds no JSON tree and runs no serializer. At most {@link #MAXIMUM_SIZE} bodies
+ * are kept, later ones are serialized on every call.
+ */
+public final class ErrorBodies {
+
+    static final int MAXIMUM_SIZE = 256;
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+    /**
+     * @param contentType one of JSON or the {@link BinaryMediaTypes}
+     * @return the error envelope built by {@link ErrorBuilder#wrap()}, serialized for the given content type
+     */
+    public byte[] get(final String errorCode, final String message, final MediaType contentType) {
+        String key = contentType.getSubtype() + '\n' + errorCode + '\n' + message;
+        byte[] body = bodies.get(key);
+        if (body == null) {
+            body = serialize(new ErrorBuilder().errorCode(errorCode).uiMessage(message).wrap(), contentType);
+            if (bodies.size() < MAXIMUM_SIZE) {
+                bodies.putIfAbsent(key, body);
+            }
+        }
+        return body;
+    }
+
+    private static byte[] serialize(final Object error, final MediaType contentType) {
+        ObjectMapper mapper = BinaryMediaTypes.APPLICATION_CBOR.equals(contentType) ? CBOR_MAPPER
+                : BinaryMediaTypes.APPLICATION_SMILE.equals(contentType) ? SMILE_MAPPER : JSON_MAPPER;
+        try {
+            return mapper.writeValueAsBytes(error);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Error " + error + " can't be serialized", ex);
+        }
+    }
+
+}
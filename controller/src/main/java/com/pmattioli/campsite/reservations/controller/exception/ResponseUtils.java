@@ -8,6 +8,7 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.ResponseEntity.status;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -47,7 +48,15 @@ public final class ResponseUtils {
     }
 
     public static <T> ResponseEntity<T> response(final int status, final T body) {
-        return status(status).contentType(APPLICATION_JSON).body(body);
+        return response(status, body, APPLICATION_JSON);
+    }
+
+    public static <T> ResponseEntity<T> response(final HttpStatus status, final T body, final MediaType contentType) {
+        return response(status.value(), body, contentType);
+    }
+
+    public static <T> ResponseEntity<T> response(final int status, final T body, final MediaType contentType) {
+        return status(status).contentType(contentType).body(body);
     }
 
     public static ObjectNode object() {
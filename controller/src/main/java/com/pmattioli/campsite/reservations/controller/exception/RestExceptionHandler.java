@@ -0,0 +1,77 @@
+package com.pmattioli.campsite.reservations.controller.exception;
+
+import static com.pmattioli.campsite.reservations.controller.exception.ResponseUtils.response;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes;
+import com.pmattioli.campsite.reservations.service.ReservationConflictException;
+
+/**
+ * Translates exceptions thrown by any of the controllers into the common error response format,
+ * encoded as JSON unless the client prefers one of the {@link BinaryMediaTypes}.
+ */
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RestExceptionHandler.class);
+
+    private final ExceptionConverter exConverter = new ExceptionConverter(this);
+
+    private final ErrorBodies errorBodies = new ErrorBodies();
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<JsonNode> handleIllegalArgumentException(final IllegalArgumentException ex,
+            final WebRequest request) {
+        return response(BAD_REQUEST, exConverter.toBuilder(ex).errorCode("400").wrap(), contentTypeFor(request));
+    }
+
+    @ExceptionHandler({IllegalStateException.class, ObjectOptimisticLockingFailureException.class})
+    public ResponseEntity<JsonNode> handleIllegalStateException(final RuntimeException ex, final WebRequest request) {
+        return response(CONFLICT, exConverter.toBuilder(ex).errorCode("409").wrap(), contentTypeFor(request));
+    }
+
+    /**
+     * Expected rejections are answered with pre-serialized bodies, as they arrive in bursts whenever
+     * popular dates open up. Optimistic locking failures aren't, as their messages name the reservation.
+     */
+    @ExceptionHandler(ReservationConflictException.class)
+    public ResponseEntity<byte[]> handleReservationConflict(final ReservationConflictException ex,
+            final WebRequest request) {
+        MediaType contentType = contentTypeFor(request);
+        return response(CONFLICT, errorBodies.get("409", ex.getMessage(), contentType), contentType);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<JsonNode> handleRejectedExecutionException(final RejectedExecutionException ex,
+            final WebRequest request) {
+        return response(SERVICE_UNAVAILABLE, exConverter.toBuilder(ex).errorCode("503")
+                .uiMessage("Too many requests in progress, try again later").wrap(), contentTypeFor(request));
+    }
+
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity handleUnexpectedException(final RuntimeException ex, final WebRequest request) {
+        LOG.error("An unexpected error occurred: ", ex);
+        return response(INTERNAL_SERVER_ERROR, exConverter.toBuilder(ex).errorCode("500").wrap(),
+                contentTypeFor(request));
+    }
+
+    private static MediaType contentTypeFor(final WebRequest request) {
+        return BinaryMediaTypes.preferredBy(request.getHeader(HttpHeaders.ACCEPT));
+    }
+}
@@ -0,0 +1,28 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BatchOperationJson {
+
+    @JsonProperty("operation")
+    private String operation;
+
+    @JsonProperty("reservation")
+    private ReservationJson reservation;
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public ReservationJson getReservation() {
+        return reservation;
+    }
+
+    public void setReservation(ReservationJson reservation) {
+        this.reservation = reservation;
+    }
+}
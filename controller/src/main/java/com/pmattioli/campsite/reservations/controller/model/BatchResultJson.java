@@ -0,0 +1,42 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResultJson {
+
+    @JsonProperty("status")
+    private int status;
+
+    @JsonProperty("reservation")
+    private ReservationJson reservation;
+
+    @JsonProperty("error")
+    private ObjectNode error;
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public ReservationJson getReservation() {
+        return reservation;
+    }
+
+    public void setReservation(ReservationJson reservation) {
+        this.reservation = reservation;
+    }
+
+    public ObjectNode getError() {
+        return error;
+    }
+
+    public void setError(ObjectNode error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,37 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class DateRangeJson {
+
+    @JsonProperty("start_date")
+    private Instant startDate;
+
+    @JsonProperty("end_date")
+    private Instant endDate;
+
+    public DateRangeJson() {}
+
+    public DateRangeJson(Instant startDate, Instant endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public Instant getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Instant startDate) {
+        this.startDate = startDate;
+    }
+
+    public Instant getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(Instant endDate) {
+        this.endDate = endDate;
+    }
+}
@@ -0,0 +1,43 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A JSON array made of already serialized UTF-8 elements, written by concatenating them.
+ *
+ * @see ReservationJsonFragments
+ */
+public class JsonFragments {
+
+    private final List<byte[]> elements;
+
+    public JsonFragments(final List<byte[]> elements) {
+        this.elements = elements;
+    }
+
+    public List<byte[]> getElements() {
+        return elements;
+    }
+
+    public long getContentLength() {
+        long length = 2 + Math.max(elements.size() - 1, 0);
+        for (byte[] element : elements) {
+            length += element.length;
+        }
+        return length;
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(elements.get(i));
+        }
+        out.write(']');
+    }
+
+}
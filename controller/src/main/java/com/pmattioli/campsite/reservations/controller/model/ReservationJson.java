@@ -14,6 +14,9 @@ public class ReservationJson {
     @JsonProperty("version")
     private String version;
 
+    @JsonProperty("site_id")
+    private Long siteId;
+
     @JsonProperty("user")
     private User user;
 
@@ -39,6 +42,14 @@ public class ReservationJson {
         this.version = version;
     }
 
+    public Long getSiteId() {
+        return siteId;
+    }
+
+    public void setSiteId(Long siteId) {
+        this.siteId = siteId;
+    }
+
     public User getUser() {
         return user;
     }
@@ -0,0 +1,97 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+
+/**
+ * Cache of the UTF-8 encoded {@link ReservationJson} of every listed reservation, keyed by id and
+ * version, so listings are assembled without mapping nor serializing reservations again.
+ * <p>
+ * Updates don't necessarily bump the version of a reservation (e.g. changing only its user), so
+ * committed {@link ReservationEvent}s evict the fragment of the reservation as well. Once
+ * {@code maximumSize} fragments are cached, the cache is cleared and starts filling up again.
+ */
+public class ReservationJsonFragments {
+
+    private final ObjectMapper objectMapper;
+
+    private final ReservationMapper reservationMapper;
+
+    private final int maximumSize;
+
+    private final Map<Long, Fragment> fragmentsById = new ConcurrentHashMap<>();
+
+    public ReservationJsonFragments(final ObjectMapper objectMapper, final ReservationMapper reservationMapper,
+            final int maximumSize) {
+        this.objectMapper = objectMapper;
+        this.reservationMapper = reservationMapper;
+        this.maximumSize = maximumSize;
+    }
+
+    public JsonFragments listingOf(final List<Reservation> reservations) {
+        List<byte[]> elements = new ArrayList<>(reservations.size());
+        for (Reservation reservation : reservations) {
+            elements.add(fragmentOf(reservation));
+        }
+        return new JsonFragments(elements);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationEvent(final ReservationEvent event) {
+        Long id = event.getReservation().getId();
+        if (id != null) {
+            fragmentsById.remove(id);
+        }
+    }
+
+    private byte[] fragmentOf(final Reservation reservation) {
+        Long id = reservation.getId();
+        if (id == null) {
+            return serialize(reservation);
+        }
+
+        Fragment fragment = fragmentsById.get(id);
+        if (fragment == null || !fragment.isVersion(reservation.getVersion())) {
+            if (fragmentsById.size() >= maximumSize) {
+                fragmentsById.clear();
+            }
+            fragment = new Fragment(reservation.getVersion(), serialize(reservation));
+            fragmentsById.put(id, fragment);
+        }
+        return fragment.bytes;
+    }
+
+    private byte[] serialize(final Reservation reservation) {
+        try {
+            return objectMapper.writeValueAsBytes(reservationMapper.toJson(reservation));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Reservation " + reservation.getId() + " can't be serialized", ex);
+        }
+    }
+
+    private static final class Fragment {
+
+        private final Long version;
+
+        private final byte[] bytes;
+
+        private Fragment(final Long version, final byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+
+        private boolean isVersion(final Long otherVersion) {
+            return version == null ? otherVersion == null : version.equals(otherVersion);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.service.ReservationPage;
+
+/**
+ * Maps reservations and users between their JSON representation and their persistent entities.
+ * Every field is copied explicitly, so mapping neither relies on reflection nor allocates anything
+ * besides the mapped objects, and renaming a field on either side breaks the build.
+ */
+public class ReservationMapper {
+
+    public ReservationJson toJson(final Reservation reservation) {
+        ReservationJson json = new ReservationJson();
+        json.setId(toString(reservation.getId()));
+        json.setVersion(toString(reservation.getVersion()));
+        json.setSiteId(reservation.getSiteId());
+        json.setUser(toJson(reservation.getUser()));
+        json.setStartDate(reservation.getStartDate());
+        json.setEndDate(reservation.getEndDate());
+        return json;
+    }
+
+    public ReservationPageJson toJson(final ReservationPage page) {
+        List<ReservationJson> reservations = new ArrayList<>(page.getReservations().size());
+        for (Reservation reservation : page.getReservations()) {
+            reservations.add(toJson(reservation));
+        }
+        ReservationPageJson json = new ReservationPageJson();
+        json.setReservations(reservations);
+        json.setNextCursor(page.getNext() == null ? null : page.getNext().encode());
+        return json;
+    }
+
+    public User toJson(final com.pmattioli.campsite.reservations.data.repo.User user) {
+        if (user == null) {
+            return null;
+        }
+        User json = new User();
+        json.setFirstName(user.getFirstName());
+        json.setLastName(user.getLastName());
+        json.setEmail(user.getEmail());
+        return json;
+    }
+
+    public Reservation toReservation(final ReservationJson json) {
+        Reservation reservation = new Reservation();
+        reservation.setId(toLong(json.getId(), "booking_id"));
+        reservation.setVersion(toLong(json.getVersion(), "version"));
+        reservation.setSiteId(json.getSiteId());
+        reservation.setUser(toUser(json.getUser()));
+        reservation.setStartDate(json.getStartDate());
+        reservation.setEndDate(json.getEndDate());
+        return reservation;
+    }
+
+    public com.pmattioli.campsite.reservations.data.repo.User toUser(final User json) {
+        if (json == null) {
+            return null;
+        }
+        com.pmattioli.campsite.reservations.data.repo.User user =
+                new com.pmattioli.campsite.reservations.data.repo.User();
+        user.setFirstName(json.getFirstName());
+        user.setLastName(json.getLastName());
+        user.setEmail(json.getEmail());
+        return user;
+    }
+
+    private static String toString(final Long value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static Long toLong(final String value, final String property) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid " + property + ": " + value);
+        }
+    }
+
+}
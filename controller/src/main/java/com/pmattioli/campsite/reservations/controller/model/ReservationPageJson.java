@@ -0,0 +1,30 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ReservationPageJson {
+
+    @JsonProperty("reservations")
+    private List<ReservationJson> reservations;
+
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
+    public List<ReservationJson> getReservations() {
+        return reservations;
+    }
+
+    public void setReservations(List<ReservationJson> reservations) {
+        this.reservations = reservations;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
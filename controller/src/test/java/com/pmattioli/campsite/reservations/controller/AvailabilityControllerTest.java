@@ -0,0 +1,85 @@
+package com.pmattioli.campsite.reservations.controller;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.pmattioli.campsite.reservations.controller.exception.ExceptionConverter;
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(AvailabilityController.class)
+public class AvailabilityControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private ReservationsService reservationsService;
+
+    private final ExceptionConverter exConverter = new ExceptionConverter(this);
+
+    @Test
+    public void testListAvailableDateRangesReturns200AndFreeRanges() throws Exception {
+
+        given(this.reservationsService.listAvailableDateRanges(2L, Instant.parse("2018-09-22T00:00:00Z"), 10))
+                .willReturn(Arrays.asList(
+                        new DateRange(Instant.parse("2018-09-22T00:00:00Z"), Instant.parse("2018-09-24T00:00:00Z")),
+                        new DateRange(Instant.parse("2018-09-27T00:00:00Z"), Instant.parse("2018-10-02T00:00:00Z"))));
+
+        this.mvc.perform(get("/v1/availability?startDate=2018-09-22T00:00:00Z&numberOfDays=10&siteId=2")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content()
+                .json("[{\"start_date\":\"2018-09-22T00:00:00Z\",\"end_date\":\"2018-09-24T00:00:00Z\"},"
+                        + "{\"start_date\":\"2018-09-27T00:00:00Z\",\"end_date\":\"2018-10-02T00:00:00Z\"}]"));
+
+        verify(this.reservationsService).listAvailableDateRanges(2L, Instant.parse("2018-09-22T00:00:00Z"), 10);
+    }
+
+    @Test
+    public void testNumberOfDaysIsNotPresentShouldPassNullAndReturn200() throws Exception {
+
+        this.mvc.perform(get("/v1/availability?startDate=2018-09-22T00:00:00Z")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content().json("[]"));
+
+        verify(this.reservationsService).listAvailableDateRanges(null, Instant.parse("2018-09-22T00:00:00Z"), null);
+    }
+
+    @Test
+    public void testListAvailableSitesReturns200AndSiteIds() throws Exception {
+
+        given(this.reservationsService.listAvailableSites(Instant.parse("2018-09-22T00:00:00Z"), 3))
+                .willReturn(Arrays.asList(1L, 3L));
+
+        this.mvc.perform(get("/v1/availability/sites?startDate=2018-09-22T00:00:00Z&numberOfDays=3")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content().json("[1,3]"));
+    }
+
+    @Test
+    public void testStartDateIsEmptyShouldReturn400() throws Exception {
+        this.mvc.perform(get("/v1/availability?startDate=")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest()).andExpect(content()
+                .json(exConverter.toBuilder(new IllegalArgumentException(
+                        "Start date parameter cannot be null or empty")).errorCode("400").wrap().toString()));
+    }
+
+    @SpringBootApplication
+    static class TestConfiguration {
+    }
+
+}
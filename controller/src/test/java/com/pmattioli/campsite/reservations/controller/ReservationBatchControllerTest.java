@@ -0,0 +1,174 @@
+package com.pmattioli.campsite.reservations.controller;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.campsite.reservations.controller.exception.ExceptionConverter;
+import com.pmattioli.campsite.reservations.controller.model.BatchOperationJson;
+import com.pmattioli.campsite.reservations.controller.model.BatchResultJson;
+import com.pmattioli.campsite.reservations.controller.model.ReservationMapper;
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.service.BatchOperation;
+import com.pmattioli.campsite.reservations.service.BatchResult;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.service.impl.ExecutorAsyncReservationsService;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(ReservationBatchController.class)
+@Import(ExecutorAsyncReservationsService.class)
+@TestPropertySource(properties = {"campsite.reservation.list.json-cache.maximum-size=100",
+        "campsite.reservation.async.pool-size=2", "campsite.reservation.async.queue-capacity=4"})
+public class ReservationBatchControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private ReservationsService reservationsService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ReservationMapper reservationMapper;
+
+    private final ExceptionConverter exConverter = new ExceptionConverter(this);
+
+    @Test
+    public void testApplyBatchReturnsStatusOfEveryOperation() throws Exception {
+
+        Reservation created = createReservation(Instant.parse("2018-09-22T00:00:00Z"));
+        Reservation stale = createReservation(Instant.parse("2018-09-25T00:00:00Z"));
+        stale.setId(2L);
+        stale.setVersion(1L);
+        Reservation deleted = createReservation(Instant.parse("2018-09-28T00:00:00Z"));
+        deleted.setId(3L);
+        deleted.setVersion(1L);
+
+        ObjectOptimisticLockingFailureException conflict =
+                new ObjectOptimisticLockingFailureException(Reservation.class, 2L);
+        given(this.reservationsService.applyBatch(anyList())).willAnswer(invocation -> {
+            created.setId(1L);
+            return Arrays.asList(BatchResult.applied(created), BatchResult.rejected(conflict),
+                    BatchResult.applied(deleted));
+        });
+
+        List<BatchOperationJson> request = Arrays.asList(operation("create", created), operation("update", stale),
+                operation("delete", deleted));
+
+        BatchResultJson createdResult = result(200);
+        createdResult.setReservation(reservationMapper.toJson(created));
+        createdResult.getReservation().setId("1");
+        BatchResultJson conflictResult = result(409);
+        conflictResult.setError(exConverter.toBuilder(conflict).errorCode("409").build());
+
+        performAsync(post("/v1/reservations:batch").content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        Arrays.asList(createdResult, conflictResult, result(204)))));
+    }
+
+    @Test
+    public void testApplyBatchRejectsUnknownOperationsWithoutApplyingThem() throws Exception {
+
+        Reservation created = createReservation(Instant.parse("2018-09-22T00:00:00Z"));
+        created.setId(1L);
+
+        ArgumentCaptor<List<BatchOperation>> captor = ArgumentCaptor.forClass(List.class);
+        given(this.reservationsService.applyBatch(captor.capture()))
+                .willReturn(Arrays.asList(BatchResult.applied(created)));
+
+        List<BatchOperationJson> request = Arrays.asList(operation("upsert", created), operation("create", created));
+
+        BatchResultJson invalidResult = result(400);
+        invalidResult.setError(exConverter.toBuilder(new IllegalArgumentException(
+                "Invalid operation: upsert. Operations: create, update, delete")).errorCode("400").build());
+        BatchResultJson createdResult = result(200);
+        createdResult.setReservation(reservationMapper.toJson(created));
+
+        performAsync(post("/v1/reservations:batch").content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        Arrays.asList(invalidResult, createdResult))));
+
+        assertEquals("Only valid operations should be applied", 1, captor.getValue().size());
+    }
+
+    @Test
+    public void testApplyBatchOfInvalidOperationsOnlyDoesNotCallService() throws Exception {
+
+        BatchOperationJson request = new BatchOperationJson();
+        request.setOperation("create");
+
+        performAsync(post("/v1/reservations:batch")
+                .content(objectMapper.writeValueAsString(Arrays.asList(request)))
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"status\":400}]"));
+
+        verify(this.reservationsService, never()).applyBatch(anyList());
+    }
+
+    private BatchOperationJson operation(final String operation, final Reservation reservation) {
+        BatchOperationJson json = new BatchOperationJson();
+        json.setOperation(operation);
+        json.setReservation(reservationMapper.toJson(reservation));
+        return json;
+    }
+
+    /**
+     * Performs a request handled asynchronously, and dispatches it again once its result is ready.
+     */
+    private ResultActions performAsync(final MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        return this.mvc.perform(asyncDispatch(this.mvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn()));
+    }
+
+    private static BatchResultJson result(final int status) {
+        BatchResultJson json = new BatchResultJson();
+        json.setStatus(status);
+        return json;
+    }
+
+    private static Reservation createReservation(final Instant startDate) {
+        return ReservationTestUtil.createReservation(startDate, startDate.plus(1, ChronoUnit.DAYS),
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com"));
+    }
+
+    @SpringBootApplication
+    static class TestConfiguration {
+    }
+
+}
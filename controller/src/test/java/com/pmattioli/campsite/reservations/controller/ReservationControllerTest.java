@@ -1,41 +1,71 @@
 package com.pmattioli.campsite.reservations.controller;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.campsite.reservations.controller.configuration.BinaryMediaTypes;
 import com.pmattioli.campsite.reservations.controller.exception.ExceptionConverter;
 import com.pmattioli.campsite.reservations.controller.model.ReservationJson;
+import com.pmattioli.campsite.reservations.controller.model.ReservationMapper;
+import com.pmattioli.campsite.reservations.controller.model.ReservationPageJson;
 import com.pmattioli.campsite.reservations.data.repo.Reservation;
 import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.service.ReservationConflictException;
+import com.pmattioli.campsite.reservations.service.ReservationCursor;
+import com.pmattioli.campsite.reservations.service.ReservationPage;
 import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.service.StaleReservationException;
+import com.pmattioli.campsite.reservations.service.impl.ExecutorAsyncReservationsService;
 import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(ReservationController.class)
+@Import(ExecutorAsyncReservationsService.class)
+@TestPropertySource(properties = {"campsite.reservation.list.json-cache.maximum-size=100",
+        "campsite.reservation.async.pool-size=2", "campsite.reservation.async.queue-capacity=4"})
 public class ReservationControllerTest {
 
     @Autowired
@@ -48,7 +78,13 @@ public class ReservationControllerTest {
     private ObjectMapper objectMapper;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private ReservationMapper reservationMapper;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileConverter;
 
     private final ExceptionConverter exConverter = new ExceptionConverter(this);
 
@@ -59,31 +95,228 @@ public class ReservationControllerTest {
         Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
                 Instant.parse("2018-09-23T00:00:00Z"), testUser);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
         testReservation.setId(1L);
-        ReservationJson expectedResponse = modelMapper.map(testReservation, ReservationJson.class);
-        given(this.reservationsService.listReservationsWithinTimeRange(request.getStartDate(), 10))
+        ReservationJson expectedResponse = reservationMapper.toJson(testReservation);
+        given(this.reservationsService.listReservationsWithinTimeRange(request.getStartDate(), 10, 0L))
                 .willReturn(Arrays.asList(testReservation));
 
         this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
                 .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content()
                 .json(objectMapper.writeValueAsString(Arrays.asList(expectedResponse))));
 
-        verify(this.reservationsService).listReservationsWithinTimeRange(request.getStartDate(), 10);
+        verify(this.reservationsService).listReservationsWithinTimeRange(request.getStartDate(), 10, 0L);
+    }
+
+    @Test
+    public void testListReservationsWithinTimeRangeReturnsCalendarVersionAsETag() throws Exception {
+
+        given(this.reservationsService.getCalendarVersion(Instant.parse("2018-09-22T00:00:00Z"), 10))
+                .willReturn(42L);
+
+        this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"42-json\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+
+        // The version is read once, and handed over to the listing
+        verify(this.reservationsService).getCalendarVersion(Instant.parse("2018-09-22T00:00:00Z"), 10);
+        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10, 42L);
+    }
+
+    @Test
+    public void testListReservationsWithinTimeRangeReturns304WhenCalendarVersionMatches() throws Exception {
+
+        given(this.reservationsService.getCalendarVersion(Instant.parse("2018-09-22T00:00:00Z"), 10))
+                .willReturn(42L);
+
+        this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"42-json\"").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified()).andExpect(content().string(""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+
+        verify(this.reservationsService, never()).listReservationsWithinTimeRange(any(Instant.class), any(), anyLong());
+    }
+
+    @Test
+    public void testListReservationsWithinTimeRangeETagDependsOnFormat() throws Exception {
+
+        given(this.reservationsService.getCalendarVersion(Instant.parse("2018-09-22T00:00:00Z"), 10))
+                .willReturn(42L);
+
+        // Validated as JSON, so the CBOR listing has to be sent in full
+        this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"42-json\"").accept(BinaryMediaTypes.APPLICATION_CBOR))
+                .andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, "\"42-cbor\""));
+    }
+
+    @Test
+    public void testListReservationsWithinTimeRangeNegotiatesSmallerCborBody() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+        testReservation.setId(1L);
+        given(this.reservationsService.listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10, 0L))
+                .willReturn(Arrays.asList(testReservation));
+
+        byte[] cborBody = this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
+                .accept(BinaryMediaTypes.APPLICATION_CBOR)).andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(BinaryMediaTypes.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] jsonBody = this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        ObjectMapper cborMapper = cborConverter.getObjectMapper();
+        assertEquals("Wrong CBOR listing", cborMapper.readTree(
+                cborMapper.writeValueAsBytes(Arrays.asList(reservationMapper.toJson(testReservation)))),
+                cborMapper.readTree(cborBody));
+        assertEquals("Start date should be encoded as epoch millis",
+                Instant.parse("2018-09-22T00:00:00Z").toEpochMilli(), cborMapper.readTree(cborBody).get(0)
+                        .get("start_date").asLong());
+        assertTrue("CBOR listing should be smaller than JSON", cborBody.length < jsonBody.length);
+    }
+
+    @Test
+    public void testMakeReservationInSmileShouldReturn200AndReservationInSmile() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+        ReservationJson request = reservationMapper.toJson(testReservation);
+        testReservation.setId(1L);
+        given(this.reservationsService.createReservation(1L, testUser, request.getStartDate(), request.getEndDate()))
+                .willReturn(testReservation);
+
+        ObjectMapper smileMapper = smileConverter.getObjectMapper();
+        byte[] body = performAsync(post("/v1/reservations")
+                .content(smileMapper.writeValueAsBytes(request)).contentType(BinaryMediaTypes.APPLICATION_SMILE)
+                .accept(BinaryMediaTypes.APPLICATION_SMILE)).andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(BinaryMediaTypes.APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals("Wrong Smile reservation", smileMapper.readTree(
+                smileMapper.writeValueAsBytes(reservationMapper.toJson(testReservation))),
+                smileMapper.readTree(body));
+    }
+
+    @Test
+    public void testErrorIsEncodedInPreferredBinaryFormat() throws Exception {
+
+        byte[] body = this.mvc.perform(get("/v1/reservations?startDate=")
+                .accept(BinaryMediaTypes.APPLICATION_SMILE)).andExpect(status().isBadRequest())
+                .andExpect(content().contentTypeCompatibleWith(BinaryMediaTypes.APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals("Wrong error envelope", exConverter.toBuilder(new IllegalArgumentException(
+                "Start date parameter cannot be null or empty")).errorCode("400").wrap(),
+                smileConverter.getObjectMapper().readTree(body));
+    }
+
+    @Test
+    public void testListReservationPageReturnsReservationsAndNextCursor() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+        testReservation.setId(2L);
+        ReservationCursor after = new ReservationCursor(Instant.parse("2018-09-21T00:00:00Z"), 1L);
+        ReservationCursor next = ReservationCursor.after(testReservation);
+
+        given(this.reservationsService.listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10,
+                after, 1)).willReturn(new ReservationPage(Collections.singletonList(testReservation), next));
+
+        ReservationPageJson expectedResponse = new ReservationPageJson();
+        expectedResponse.setReservations(Collections.singletonList(reservationMapper.toJson(testReservation)));
+        expectedResponse.setNextCursor(next.encode());
+
+        performAsync(get("/v1/reservations/page?startDate=2018-09-22T00:00:00Z&numberOfDays=10&pageSize=1&cursor="
+                + after.encode()).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(expectedResponse)));
+    }
+
+    @Test
+    public void testListReservationPageWithInvalidCursorReturns400() throws Exception {
+
+        this.mvc.perform(get("/v1/reservations/page?startDate=2018-09-22T00:00:00Z&cursor=abc")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest()).andExpect(content()
+                .json(exConverter.toBuilder(new IllegalArgumentException(
+                        "Invalid cursor: abc")).errorCode("400").wrap().toString()));
+
+        verify(this.reservationsService, never()).listReservationsWithinTimeRange(any(Instant.class), any(), any(),
+                any());
+    }
+
+    @Test
+    public void testStreamReservationsWithinTimeRangeWritesEveryReservation() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation first = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+        first.setId(1L);
+        Reservation second = ReservationTestUtil.createReservation(Instant.parse("2018-09-23T00:00:00Z"),
+                Instant.parse("2018-09-25T00:00:00Z"), testUser);
+        second.setId(2L);
+
+        doAnswer(invocation -> {
+            Consumer<Reservation> action = invocation.getArgument(2);
+            action.accept(first);
+            action.accept(second);
+            return null;
+        }).when(this.reservationsService).forEachReservationWithinTimeRange(eq(Instant.parse("2018-09-22T00:00:00Z")),
+                eq(10), any());
+
+        MvcResult result = this.mvc.perform(get("/v1/reservations/stream?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+
+        this.mvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(content()
+                .json(objectMapper.writeValueAsString(Arrays.asList(reservationMapper.toJson(first),
+                        reservationMapper.toJson(second)))));
+    }
+
+    @Test
+    public void testStreamReservationsWithStartDateEmptyShouldReturn400() throws Exception {
+        this.mvc.perform(get("/v1/reservations/stream?startDate=")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+
+        verify(this.reservationsService, never()).forEachReservationWithinTimeRange(any(Instant.class), any(), any());
+    }
+
+    @Test
+    public void testListReservationHistoryReturnsLiveAndArchivedReservations() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation archived = ReservationTestUtil.createReservation(Instant.parse("2017-09-22T00:00:00Z"),
+                Instant.parse("2017-09-23T00:00:00Z"), testUser);
+        archived.setId(1L);
+        Reservation live = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+        live.setId(2L);
+
+        given(this.reservationsService.listReservationHistoryWithinTimeRange(
+                Instant.parse("2017-09-01T00:00:00Z"), 400)).willReturn(Arrays.asList(archived, live));
+
+        this.mvc.perform(get("/v1/reservations/history?startDate=2017-09-01T00:00:00Z&numberOfDays=400")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content()
+                .json(objectMapper.writeValueAsString(Arrays.asList(reservationMapper.toJson(archived),
+                        reservationMapper.toJson(live)))));
+
+        verify(this.reservationsService, never()).listReservationsWithinTimeRange(any(Instant.class), any(), anyLong());
     }
 
     @Test
     public void testListReservationsWithinTimeRangeReturns409WhenDatesAreNotAvailable() throws Exception {
         doThrow(new IllegalStateException("Illegal state")).when(this.reservationsService)
-                .listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10);
+                .listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10, 0L);
 
         this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z&numberOfDays=10")
                 .accept(MediaType.APPLICATION_JSON)).andExpect(status().isConflict()).andExpect(content()
                 .json(exConverter.toBuilder(new IllegalArgumentException(
                         "Illegal state")).errorCode("409").wrap().toString()));
 
-        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10);
+        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), 10, 0L);
     }
 
     @Test
@@ -92,7 +325,7 @@ public class ReservationControllerTest {
         this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z")
                 .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
 
-        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), null);
+        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), null, 0L);
 
     }
 
@@ -102,7 +335,7 @@ public class ReservationControllerTest {
         this.mvc.perform(get("/v1/reservations?startDate=2018-09-22T00:00:00Z")
                 .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
 
-        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), null);
+        verify(this.reservationsService).listReservationsWithinTimeRange(Instant.parse("2018-09-22T00:00:00Z"), null, 0L);
 
     }
 
@@ -127,14 +360,15 @@ public class ReservationControllerTest {
         Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
                 Instant.parse("2018-09-23T00:00:00Z"), testUser);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
         testReservation.setId(1L);
-        ReservationJson expectedResponse = modelMapper.map(testReservation, ReservationJson.class);
-        given(this.reservationsService.createReservation(testUser, request.getStartDate(), request.getEndDate()))
+        ReservationJson expectedResponse = reservationMapper.toJson(testReservation);
+        given(this.reservationsService.createReservation(1L, testUser, request.getStartDate(),
+                request.getEndDate()))
                 .willReturn(testReservation);
 
-        this.mvc.perform(post("/v1/reservations")
+        performAsync(post("/v1/reservations")
                 .content(objectMapper.writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(content()
                 .json(objectMapper.writeValueAsString(expectedResponse)));
@@ -147,18 +381,72 @@ public class ReservationControllerTest {
         Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
                 Instant.parse("2018-09-23T00:00:00Z"), testUser);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
-        given(this.reservationsService.createReservation(testUser, request.getStartDate(), request.getEndDate()))
+        given(this.reservationsService.createReservation(1L, testUser, request.getStartDate(),
+                request.getEndDate()))
                 .willThrow(new IllegalStateException("Illegal State Error"));
 
-        this.mvc.perform(post("/v1/reservations").content(objectMapper.writeValueAsString(request))
+        performAsync(post("/v1/reservations").content(objectMapper.writeValueAsString(request))
                 .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isConflict())
                 .andExpect(content().json(exConverter.toBuilder(new IllegalArgumentException(
                         "Illegal State Error")).errorCode("409").wrap().toString()));
     }
 
+    @Test
+    public void testMakeReservationOnTakenDatesShouldReturnSamePreSerializedConflict() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+
+        ReservationJson request = reservationMapper.toJson(testReservation);
+
+        given(this.reservationsService.createReservation(1L, testUser, request.getStartDate(),
+                request.getEndDate()))
+                .willThrow(new ReservationConflictException("Dates taken"));
+
+        String expectedBody = exConverter.toBuilder(new ReservationConflictException("Dates taken"))
+                .errorCode("409").wrap().toString();
+        byte[] firstBody = performAsync(post("/v1/reservations").content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedBody))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] secondBody = performAsync(post("/v1/reservations").content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertTrue("Conflicts should get identical bodies", Arrays.equals(firstBody, secondBody));
+    }
+
+    @Test
+    public void testUpdateStaleReservationShouldReturn409NamingTheReservation() throws Exception {
+
+        User testUser = ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com");
+        Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"), testUser);
+        testReservation.setId(1L);
+        testReservation.setVersion(1L);
+
+        given(this.reservationsService.updateReservation(testReservation))
+                .willThrow(new StaleReservationException(1L));
+
+        byte[] body = performAsync(put("/v1/reservations")
+                .content(objectMapper.writeValueAsString(reservationMapper.toJson(testReservation)))
+                .contentType(MediaType.APPLICATION_JSON).accept(BinaryMediaTypes.APPLICATION_CBOR))
+                .andExpect(status().isConflict())
+                .andExpect(content().contentTypeCompatibleWith(BinaryMediaTypes.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals("Wrong error envelope", exConverter.toBuilder(new ObjectOptimisticLockingFailureException(
+                Reservation.class, 1L)).errorCode("409").wrap(),
+                cborConverter.getObjectMapper().readTree(body));
+    }
+
     @Test
     public void testUpdateReservationReturns200AndUpdatedReservation() throws Exception {
 
@@ -168,11 +456,11 @@ public class ReservationControllerTest {
         testReservation.setVersion(1L);
         testReservation.setId(1L);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
         given(this.reservationsService.updateReservation(testReservation)).willReturn(testReservation);
 
-        this.mvc.perform(put("/v1/reservations").content(objectMapper.writeValueAsString(request))
+        performAsync(put("/v1/reservations").content(objectMapper.writeValueAsString(request))
                 .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(request)));
@@ -185,12 +473,12 @@ public class ReservationControllerTest {
         Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
                 Instant.parse("2018-09-23T00:00:00Z"), testUser);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
         given(this.reservationsService.updateReservation(testReservation))
                 .willThrow(new IllegalArgumentException("Illegal Argument Error"));
 
-        this.mvc.perform(put("/v1/reservations").content(objectMapper.writeValueAsString(request))
+        performAsync(put("/v1/reservations").content(objectMapper.writeValueAsString(request))
                 .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
                 .andExpect(content().json(exConverter.toBuilder(new IllegalArgumentException(
@@ -206,11 +494,11 @@ public class ReservationControllerTest {
         testReservation.setVersion(1L);
         testReservation.setId(1L);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
         ArgumentCaptor<Reservation> captor = ArgumentCaptor.forClass(Reservation.class);
 
-        this.mvc.perform(delete("/v1/reservations").content(objectMapper.writeValueAsString(request))
+        performAsync(delete("/v1/reservations").content(objectMapper.writeValueAsString(request))
                 .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNoContent());
 
@@ -226,18 +514,25 @@ public class ReservationControllerTest {
         Reservation testReservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
                 Instant.parse("2018-09-23T00:00:00Z"), testUser);
 
-        ReservationJson request = modelMapper.map(testReservation, ReservationJson.class);
+        ReservationJson request = reservationMapper.toJson(testReservation);
 
         doThrow(new IllegalArgumentException("Illegal Argument Error")).when(this.reservationsService)
                 .deleteReservation(testReservation);
 
-        this.mvc.perform(delete("/v1/reservations").content(objectMapper.writeValueAsString(request))
+        performAsync(delete("/v1/reservations").content(objectMapper.writeValueAsString(request))
                 .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
                 .andExpect(content().json(exConverter.toBuilder(new IllegalArgumentException(
                         "Illegal Argument Error")).errorCode("400").wrap().toString()));
     }
 
+    /**
+     * Performs a request handled asynchronously, and dispatches it again once its result is ready.
+     */
+    private ResultActions performAsync(final MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        return this.mvc.perform(asyncDispatch(this.mvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn()));
+    }
+
     @SpringBootApplication
     static class TestConfiguration {
     }
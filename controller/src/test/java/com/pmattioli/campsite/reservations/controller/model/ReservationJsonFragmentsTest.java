@@ -0,0 +1,86 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+public class ReservationJsonFragmentsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private final ReservationMapper reservationMapper = new ReservationMapper();
+
+    private final ReservationJsonFragments jsonFragments = new ReservationJsonFragments(objectMapper, reservationMapper, 2);
+
+    @Test
+    public void testListingIsSerializedAsJsonArray() throws IOException {
+
+        Reservation first = createReservation(1L, 1L);
+        Reservation second = createReservation(2L, 1L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonFragments listing = jsonFragments.listingOf(Arrays.asList(first, second));
+        listing.writeTo(out);
+
+        assertEquals("Wrong listing", objectMapper.writeValueAsString(Arrays.asList(
+                reservationMapper.toJson(first), reservationMapper.toJson(second))),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("Wrong content length", (long) out.size(), listing.getContentLength());
+    }
+
+    @Test
+    public void testFragmentIsReusedForSameVersion() {
+
+        byte[] fragment = fragmentOf(createReservation(1L, 1L));
+
+        assertTrue("Fragment should be reused", fragment == fragmentOf(createReservation(1L, 1L)));
+        assertTrue("Fragment of a new version shouldn't be reused", fragment != fragmentOf(createReservation(1L, 2L)));
+    }
+
+    @Test
+    public void testEventEvictsFragment() {
+
+        Reservation reservation = createReservation(1L, 1L);
+        byte[] fragment = fragmentOf(reservation);
+
+        jsonFragments.onReservationEvent(ReservationEvent.updated(reservation));
+
+        assertTrue("Fragment should be evicted", fragment != fragmentOf(reservation));
+    }
+
+    @Test
+    public void testEmptyListingIsEmptyArray() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jsonFragments.listingOf(Collections.emptyList()).writeTo(out);
+
+        assertEquals("Wrong listing", "[]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private byte[] fragmentOf(final Reservation reservation) {
+        return jsonFragments.listingOf(Collections.singletonList(reservation)).getElements().get(0);
+    }
+
+    private static Reservation createReservation(final Long id, final Long version) {
+        Reservation reservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"),
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com"));
+        reservation.setId(id);
+        reservation.setVersion(version);
+        return reservation;
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.pmattioli.campsite.reservations.controller.model;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+public class ReservationMapperTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final ReservationMapper reservationMapper = new ReservationMapper();
+
+    @Test
+    public void testReservationToJson() {
+
+        Reservation reservation = createReservation();
+
+        ReservationJson json = reservationMapper.toJson(reservation);
+
+        assertEquals("Wrong id", "7", json.getId());
+        assertEquals("Wrong version", "3", json.getVersion());
+        assertEquals("Wrong site", 2L, json.getSiteId());
+        assertEquals("Wrong start date", reservation.getStartDate(), json.getStartDate());
+        assertEquals("Wrong end date", reservation.getEndDate(), json.getEndDate());
+        assertEquals("Wrong first name", "Florencia", json.getUser().getFirstName());
+        assertEquals("Wrong last name", "Prieto", json.getUser().getLastName());
+        assertEquals("Wrong email", "florpri@gmail.com", json.getUser().getEmail());
+    }
+
+    @Test
+    public void testJsonToReservationRoundTrips() {
+
+        Reservation reservation = createReservation();
+
+        assertEquals("Reservation should round trip", reservation,
+                reservationMapper.toReservation(reservationMapper.toJson(reservation)));
+    }
+
+    @Test
+    public void testMissingValuesAreMappedToNull() {
+
+        Reservation reservation = reservationMapper.toReservation(new ReservationJson());
+
+        assertEquals("Id should be null", null, reservation.getId());
+        assertEquals("Version should be null", null, reservation.getVersion());
+        assertEquals("User should be null", null, reservation.getUser());
+    }
+
+    @Test
+    public void testInvalidBookingIdIsRejected() {
+
+        ReservationJson json = new ReservationJson();
+        json.setId("abc");
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Invalid booking_id: abc");
+
+        reservationMapper.toReservation(json);
+    }
+
+    private static Reservation createReservation() {
+        Reservation reservation = ReservationTestUtil.createReservation(Instant.parse("2018-09-22T00:00:00Z"),
+                Instant.parse("2018-09-23T00:00:00Z"),
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com"));
+        reservation.setId(7L);
+        reservation.setVersion(3L);
+        reservation.setSiteId(2L);
+        return reservation;
+    }
+
+}
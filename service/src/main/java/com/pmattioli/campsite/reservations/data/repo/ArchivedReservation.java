@@ -0,0 +1,86 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * A completed {@link Reservation} moved out of the live {@code reservation} table, so that table
+ * and its indexes only hold the stays the service still books and lists. Archived reservations keep
+ * the id and version they had while live, and are never updated.
+ */
+@Entity
+@Table(name = "reservation_archive", indexes = {
+        @Index(name = "idx_reservation_archive_start_date_end_date", columnList = "start_date, end_date") })
+public class ArchivedReservation {
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private Long version;
+
+    @Column(name = "site_id", nullable = false)
+    private Long siteId;
+
+    @Column(name = "start_date")
+    private Instant startDate;
+
+    @Column(name = "end_date")
+    private Instant endDate;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id")
+    private User user;
+
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+
+    public ArchivedReservation() {}
+
+    public ArchivedReservation(Reservation reservation, Instant archivedAt) {
+        this.id = reservation.getId();
+        this.version = reservation.getVersion();
+        this.siteId = reservation.getSiteId();
+        this.startDate = reservation.getStartDate();
+        this.endDate = reservation.getEndDate();
+        this.user = reservation.getUser();
+        this.archivedAt = archivedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Long getSiteId() {
+        return siteId;
+    }
+
+    public Instant getStartDate() {
+        return startDate;
+    }
+
+    public Instant getEndDate() {
+        return endDate;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public Instant getArchivedAt() {
+        return archivedAt;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ArchivedReservationRepository extends JpaRepository<ArchivedReservation, Long> {
+
+    /**
+     * Lists the archived reservations overlapping the given time range as detached
+     * {@link Reservation}s, along with their users.
+     */
+    default List<Reservation> listReservationsConflictingWithRange(Instant startDate, Instant endDate) {
+        return findReservationViewsConflictingWithRange(startDate, endDate).stream()
+                .map(ReservationView::toReservation)
+                .collect(Collectors.toList());
+    }
+
+    // Read from the primary database, like the live reservations it's merged with, so a reservation
+    // archived in between is never missed
+    @Query("SELECT new com.pmattioli.campsite.reservations.data.repo.ReservationView(a.id, a.version, a.siteId, "
+            + "a.startDate, a.endDate, u.id, u.firstName, u.lastName, u.email) "
+            + "FROM ArchivedReservation a LEFT JOIN a.user u WHERE a.startDate < :endDate AND a.endDate > :startDate")
+    @Transactional
+    List<ReservationView> findReservationViewsConflictingWithRange(Instant startDate, Instant endDate);
+
+}
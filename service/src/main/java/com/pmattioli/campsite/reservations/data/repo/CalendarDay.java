@@ -0,0 +1,45 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Version of a calendar day, bumped by every write changing a reservation that touches the day.
+ */
+@Entity
+@Table(name = "calendar_day")
+public class CalendarDay {
+
+    @Id
+    private LocalDate day;
+
+    @Column(nullable = false)
+    private long version;
+
+    public CalendarDay() {}
+
+    public CalendarDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+}
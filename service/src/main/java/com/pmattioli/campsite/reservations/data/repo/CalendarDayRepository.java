@@ -0,0 +1,40 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface CalendarDayRepository extends JpaRepository<CalendarDay, LocalDate> {
+
+    /**
+     * Sums the versions of the days from the first given day up to, but not including, the second one.
+     * Days that were never written count as {@code 0}.
+     * <p>
+     * Like the listings it validates, it runs in a read-write transaction of its own when called outside
+     * of a transaction, so it's never served by a read replica: a lagging replica would keep returning
+     * the version of a listing cached before the latest writes.
+     */
+    @Query("SELECT COALESCE(SUM(d.version), 0) FROM CalendarDay d WHERE d.day >= :fromDay AND d.day < :toDay")
+    @Transactional
+    long sumVersionsWithin(LocalDate fromDay, LocalDate toDay);
+
+    /**
+     * Increments the versions of the days from the first given day up to, but not including, the second
+     * one, locking their rows until the surrounding transaction ends.
+     *
+     * @return the number of days bumped, which misses the days that were never written
+     */
+    @Modifying
+    @Query("UPDATE CalendarDay d SET d.version = d.version + 1 WHERE d.day >= :fromDay AND d.day < :toDay")
+    int bumpVersionsWithin(LocalDate fromDay, LocalDate toDay);
+
+    @Query("SELECT d.day FROM CalendarDay d WHERE d.day >= :fromDay AND d.day < :toDay")
+    List<LocalDate> findDaysWithin(LocalDate fromDay, LocalDate toDay);
+
+}
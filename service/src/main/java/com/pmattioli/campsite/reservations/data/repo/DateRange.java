@@ -0,0 +1,53 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.Instant;
+
+/**
+ * A half-open {@code [startDate, endDate)} time range. Used as a lightweight projection of the
+ * dates of a {@link Reservation}, without loading the entity nor its {@link User}.
+ */
+public class DateRange {
+
+    private final Instant startDate;
+
+    private final Instant endDate;
+
+    public DateRange(Instant startDate, Instant endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public Instant getStartDate() {
+        return startDate;
+    }
+
+    public Instant getEndDate() {
+        return endDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        DateRange that = (DateRange) o;
+
+        if (startDate != null ? !startDate.equals(that.startDate) : that.startDate != null)
+            return false;
+        return endDate != null ? endDate.equals(that.endDate) : that.endDate == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = startDate != null ? startDate.hashCode() : 0;
+        result = 31 * result + (endDate != null ? endDate.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + startDate + ", " + endDate + ")";
+    }
+}
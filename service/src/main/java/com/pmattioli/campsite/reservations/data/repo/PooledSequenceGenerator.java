@@ -0,0 +1,43 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Sequence generator handing out ids in blocks of {@value #BLOCK_SIZE_SETTING} ids (a Hibernate
+ * setting, {@value #DEFAULT_BLOCK_SIZE} by default). The sequence is read once per block instead of
+ * once per insert, and every id of the block is known up front, so inserts can be grouped into JDBC
+ * batches.
+ * <p>
+ * Blocks are allocated with the {@code pooled-lo} optimizer: the sequence value is the lowest id of
+ * the block, so ids stay consistent if the block size is changed or rows are inserted outside of
+ * Hibernate through the sequence.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String STRATEGY = "com.pmattioli.campsite.reservations.data.repo.PooledSequenceGenerator";
+
+    public static final String BLOCK_SIZE_SETTING = "campsite.id.block-size";
+
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    @Override
+    public void configure(final Type type, final Properties params, final ServiceRegistry serviceRegistry)
+            throws MappingException {
+        Object blockSize = serviceRegistry.getService(ConfigurationService.class).getSettings()
+                .get(BLOCK_SIZE_SETTING);
+        params.setProperty(INCREMENT_PARAM, blockSize == null ? Integer.toString(DEFAULT_BLOCK_SIZE)
+                : blockSize.toString());
+        params.setProperty(OPT_PARAM, "pooled-lo");
+        super.configure(type, params, serviceRegistry);
+    }
+
+}
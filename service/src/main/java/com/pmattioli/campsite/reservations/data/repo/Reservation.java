@@ -2,38 +2,59 @@ package com.pmattioli.campsite.reservations.data.repo;
 
 import java.time.Instant;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CascadeType;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 @Entity
-@Table(name = "reservation")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "reservation", indexes = {
+        @Index(name = "idx_reservation_site_id_start_date_end_date", columnList = "site_id, start_date, end_date"),
+        @Index(name = "idx_reservation_start_date_end_date", columnList = "start_date, end_date") })
 public class Reservation {
 
+    public static final Long DEFAULT_SITE_ID = 1L;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservation_id")
+    @GenericGenerator(name = "reservation_id", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "reservation_id_seq"))
     private Long id;
 
     @Version
     @Column(nullable = false)
     private Long version;
 
+    @Column(name = "site_id", nullable = false)
+    private Long siteId = DEFAULT_SITE_ID;
+
+    @Column(name = "start_date")
     private Instant startDate;
 
+    @Column(name = "end_date")
     private Instant endDate;
 
+    // Users are shared by all the reservations of a guest, so they outlive them
     @ManyToOne
     @JoinColumn(name="customer_id")
-    @Cascade(CascadeType.ALL)
+    @Cascade({CascadeType.PERSIST, CascadeType.MERGE, CascadeType.DETACH})
     private User user;
 
     public Reservation(){}
@@ -60,6 +81,14 @@ public class Reservation {
         this.version = version;
     }
 
+    public Long getSiteId() {
+        return siteId;
+    }
+
+    public void setSiteId(Long siteId) {
+        this.siteId = siteId;
+    }
+
     public Instant getStartDate() {
         return startDate;
     }
@@ -97,6 +126,8 @@ public class Reservation {
             return false;
         if (version != null ? !version.equals(that.version) : that.version != null)
             return false;
+        if (siteId != null ? !siteId.equals(that.siteId) : that.siteId != null)
+            return false;
         if (startDate != null ? !startDate.equals(that.startDate) : that.startDate != null)
             return false;
         if (endDate != null ? !endDate.equals(that.endDate) : that.endDate != null)
@@ -108,6 +139,7 @@ public class Reservation {
     public int hashCode() {
         int result = id != null ? id.hashCode() : 0;
         result = 31 * result + (version != null ? version.hashCode() : 0);
+        result = 31 * result + (siteId != null ? siteId.hashCode() : 0);
         result = 31 * result + (startDate != null ? startDate.hashCode() : 0);
         result = 31 * result + (endDate != null ? endDate.hashCode() : 0);
         result = 31 * result + (user != null ? user.hashCode() : 0);
@@ -0,0 +1,104 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+@Entity
+@Table(name = "reservation_night", uniqueConstraints = @UniqueConstraint(name = "uk_reservation_night_site_night",
+        columnNames = {"site_id", "night"}))
+public class ReservationNight {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservation_night_id")
+    @GenericGenerator(name = "reservation_night_id", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "reservation_night_id_seq"))
+    private Long id;
+
+    @Column(name = "site_id", nullable = false)
+    private Long siteId;
+
+    @Column(nullable = false)
+    private LocalDate night;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "reservation_id")
+    private Reservation reservation;
+
+    public ReservationNight() {}
+
+    public ReservationNight(LocalDate night, Reservation reservation) {
+        this.siteId = reservation.getSiteId();
+        this.night = night;
+        this.reservation = reservation;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getSiteId() {
+        return siteId;
+    }
+
+    public void setSiteId(Long siteId) {
+        this.siteId = siteId;
+    }
+
+    public LocalDate getNight() {
+        return night;
+    }
+
+    public void setNight(LocalDate night) {
+        this.night = night;
+    }
+
+    public Reservation getReservation() {
+        return reservation;
+    }
+
+    public void setReservation(Reservation reservation) {
+        this.reservation = reservation;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        ReservationNight that = (ReservationNight) o;
+
+        if (id != null ? !id.equals(that.id) : that.id != null)
+            return false;
+        if (siteId != null ? !siteId.equals(that.siteId) : that.siteId != null)
+            return false;
+        return night != null ? night.equals(that.night) : that.night == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (siteId != null ? siteId.hashCode() : 0);
+        result = 31 * result + (night != null ? night.hashCode() : 0);
+        return result;
+    }
+}
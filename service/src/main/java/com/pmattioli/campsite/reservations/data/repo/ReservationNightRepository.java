@@ -0,0 +1,26 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReservationNightRepository extends JpaRepository<ReservationNight, Long> {
+
+    @Query("SELECT n FROM ReservationNight n WHERE n.siteId = :siteId AND n.night >= :fromNight AND n.night < :toNight")
+    List<ReservationNight> findNightsWithinRange(Long siteId, LocalDate fromNight, LocalDate toNight);
+
+    @Modifying
+    @Query("DELETE FROM ReservationNight n WHERE n.reservation.id = :reservationId")
+    void deleteByReservationId(Long reservationId);
+
+    @Modifying
+    @Query("DELETE FROM ReservationNight n WHERE n.reservation.id IN :reservationIds")
+    void deleteByReservationIdIn(Collection<Long> reservationIds);
+
+}
@@ -1,17 +1,134 @@
 package com.pmattioli.campsite.reservations.data.repo;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface ReservationRepository extends JpaRepository<Reservation, Long> {
 
-    @Query("SELECT r FROM Reservation r WHERE (r.startDate < :endDate AND r.endDate > :startDate) "
-            + "OR (r.endDate < :startDate AND r.startDate > :endDate)")
+    String OCCUPIED_SITES_QUERY_REGION = "occupied-sites";
+
+    String STREAM_FETCH_SIZE = "256";
+
+    /**
+     * Lists the reservations overlapping the given time range.
+     */
+    @Query("SELECT r FROM Reservation r WHERE r.startDate < :endDate AND r.endDate > :startDate")
     List<Reservation> findReservationsConflictingWithRange(Instant startDate, Instant endDate);
 
+    /**
+     * Lists the reservations overlapping the given time range as detached entities built from
+     * {@link #findReservationViewsConflictingWithRange(Instant, Instant)}, so their users are read
+     * in the same statement rather than one select per guest.
+     */
+    default List<Reservation> listReservationsConflictingWithRange(Instant startDate, Instant endDate) {
+        return findReservationViewsConflictingWithRange(startDate, endDate).stream()
+                .map(ReservationView::toReservation)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Lists projections of the reservations overlapping the given time range, joined with their
+     * users. Results are never kept in the query cache: the listings it loads are cached in memory
+     * under the calendar version read from the primary, so they have to be read from the database.
+     * <p>
+     * Unlike the other listing and availability queries, it runs in a read-write transaction of its own
+     * when called outside of a transaction, so it's never served by a read replica: a lagging replica
+     * would return listings older than the calendar version they're cached under.
+     */
+    @Query("SELECT new com.pmattioli.campsite.reservations.data.repo.ReservationView(r.id, r.version, r.siteId, "
+            + "r.startDate, r.endDate, u.id, u.firstName, u.lastName, u.email) "
+            + "FROM Reservation r LEFT JOIN r.user u WHERE r.startDate < :endDate AND r.endDate > :startDate")
+    @Transactional
+    List<ReservationView> findReservationViewsConflictingWithRange(Instant startDate, Instant endDate);
+
+    /**
+     * Streams the reservations overlapping the given time range, sorted by start date, along with
+     * their users. Rows are read from an open cursor {@value #STREAM_FETCH_SIZE} at a time and
+     * loaded as read-only entities, so the stream has to be consumed and closed within a transaction.
+     */
+    @Query("SELECT r FROM Reservation r LEFT JOIN FETCH r.user "
+            + "WHERE r.startDate < :endDate AND r.endDate > :startDate ORDER BY r.startDate, r.id")
+    @QueryHints({ @QueryHint(name = "org.hibernate.fetchSize", value = STREAM_FETCH_SIZE),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true") })
+    Stream<Reservation> streamReservationsConflictingWithRange(Instant startDate, Instant endDate);
+
+    /**
+     * Lists the first reservations overlapping the given time range, sorted by start date and id.
+     * Only the page size of the given {@link Pageable} is used. Users are fetched in the same statement.
+     */
+    @Query("SELECT r FROM Reservation r LEFT JOIN FETCH r.user "
+            + "WHERE r.startDate < :endDate AND r.endDate > :startDate ORDER BY r.startDate, r.id")
+    @Transactional(readOnly = true)
+    List<Reservation> findReservationPageConflictingWithRange(Instant startDate, Instant endDate, Pageable pageable);
+
+    /**
+     * Lists the reservations overlapping the given time range that come after the given start date
+     * and id, sorted by start date and id. Only the page size of the given {@link Pageable} is used:
+     * rows are sought past the given position rather than skipped, so deep pages cost the same as
+     * the first one.
+     */
+    @Query("SELECT r FROM Reservation r LEFT JOIN FETCH r.user "
+            + "WHERE r.startDate < :endDate AND r.endDate > :startDate "
+            + "AND (r.startDate > :afterStartDate OR (r.startDate = :afterStartDate AND r.id > :afterId)) "
+            + "ORDER BY r.startDate, r.id")
+    @Transactional(readOnly = true)
+    List<Reservation> findReservationPageConflictingWithRangeAfter(Instant startDate, Instant endDate,
+            Instant afterStartDate, Long afterId, Pageable pageable);
+
+    /**
+     * Lists the first reservations that ended at or before the given date, sorted by id, along with
+     * their users. Only the page size of the given {@link Pageable} is used.
+     */
+    @Query("SELECT r FROM Reservation r LEFT JOIN FETCH r.user WHERE r.endDate <= :endDate ORDER BY r.id")
+    List<Reservation> findReservationsEndedBy(Instant endDate, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Reservation r WHERE r.id IN :ids")
+    int deleteByIdIn(Collection<Long> ids);
+
+    /**
+     * Tells whether any reservation at the given site overlaps the given time range. Only the
+     * first matching row is looked up, through the {@code (site_id, start_date, end_date)} index.
+     */
+    default boolean existsSiteReservationConflictingWithRange(Long siteId, Instant startDate, Instant endDate) {
+        return existsBySiteIdAndStartDateBeforeAndEndDateAfter(siteId, endDate, startDate);
+    }
+
+    boolean existsBySiteIdAndStartDateBeforeAndEndDateAfter(Long siteId, Instant endDate, Instant startDate);
+
+    @Query("SELECT new com.pmattioli.campsite.reservations.data.repo.DateRange(r.startDate, r.endDate) "
+            + "FROM Reservation r WHERE r.siteId = :siteId AND r.startDate < :endDate AND r.endDate > :startDate "
+            + "ORDER BY r.startDate")
+    @Transactional(readOnly = true)
+    List<DateRange> findOccupiedRangesWithinRange(Long siteId, Instant startDate, Instant endDate);
+
+    /**
+     * Lists the given sites taken by a reservation overlapping the given time range. Results are kept
+     * in the {@value #OCCUPIED_SITES_QUERY_REGION} query cache region when the query cache is enabled.
+     * <p>
+     * It's the only query cached: the query cache is only invalidated by the writes of this instance,
+     * so queries checking new reservations, or feeding listings cached under a calendar version, must
+     * always read the database.
+     */
+    @Query("SELECT DISTINCT r.siteId FROM Reservation r WHERE r.siteId IN :siteIds "
+            + "AND r.startDate < :endDate AND r.endDate > :startDate")
+    @QueryHints({ @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = OCCUPIED_SITES_QUERY_REGION) })
+    @Transactional(readOnly = true)
+    List<Long> findOccupiedSitesWithinRange(Collection<Long> siteIds, Instant startDate, Instant endDate);
+
 }
@@ -0,0 +1,100 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.time.Instant;
+
+/**
+ * A read-only projection of a {@link Reservation} and its {@link User}, holding exactly the
+ * columns a listing needs. Rows are read in a single statement and never tracked by the
+ * persistence context, unlike entities whose eager {@code user} association is loaded with one
+ * extra select per distinct guest.
+ */
+public class ReservationView {
+
+    private final Long id;
+
+    private final Long version;
+
+    private final Long siteId;
+
+    private final Instant startDate;
+
+    private final Instant endDate;
+
+    private final Long userId;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final String email;
+
+    public ReservationView(Long id, Long version, Long siteId, Instant startDate, Instant endDate, Long userId,
+            String firstName, String lastName, String email) {
+        this.id = id;
+        this.version = version;
+        this.siteId = siteId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.userId = userId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Long getSiteId() {
+        return siteId;
+    }
+
+    public Instant getStartDate() {
+        return startDate;
+    }
+
+    public Instant getEndDate() {
+        return endDate;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Builds a detached {@link Reservation}, along with its {@link User} if it has one, out of this
+     * projection.
+     */
+    public Reservation toReservation() {
+        User user = null;
+        if (userId != null) {
+            user = new User();
+            user.setId(userId);
+            user.setFirstName(firstName);
+            user.setLastName(lastName);
+            user.setEmail(email);
+        }
+        Reservation reservation = new Reservation(startDate, endDate, user);
+        reservation.setId(id);
+        reservation.setVersion(version);
+        reservation.setSiteId(siteId);
+        return reservation;
+    }
+
+}
@@ -2,6 +2,7 @@ package com.pmattioli.campsite.reservations.data.repo;
 
 import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -9,13 +10,24 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 @Entity
-@Table(name = "user")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "user", uniqueConstraints = @UniqueConstraint(name = "uk_user_email", columnNames = "email"))
 public class User {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_id")
+    @GenericGenerator(name = "customer_id", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "customer_id_seq"))
     @Column(name = "customer_id")
     private Long id;
 
@@ -26,6 +38,7 @@ public class User {
     private String email;
 
     @OneToMany(mappedBy = "user")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Reservation> reservations;
 
     public Long getId() {
@@ -83,9 +96,9 @@ public class User {
             return false;
         if (lastName != null ? !lastName.equals(user.lastName) : user.lastName != null)
             return false;
-        if (email != null ? !email.equals(user.email) : user.email != null)
-            return false;
-        return reservations != null ? reservations.equals(user.reservations) : user.reservations == null;
+        // The reservations are left out, as comparing them would initialize the lazy collection
+        // and recurse back into this user through each reservation
+        return email != null ? email.equals(user.email) : user.email == null;
     }
 
     @Override
@@ -94,7 +107,6 @@ public class User {
         result = 31 * result + (firstName != null ? firstName.hashCode() : 0);
         result = 31 * result + (lastName != null ? lastName.hashCode() : 0);
         result = 31 * result + (email != null ? email.hashCode() : 0);
-        result = 31 * result + (reservations != null ? reservations.hashCode() : 0);
         return result;
     }
 }
@@ -0,0 +1,16 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserRepository extends JpaRepository<User, Long> {
+
+    /**
+     * Looks up a user through the unique index on its email.
+     */
+    Optional<User> findByEmail(String email);
+
+}
@@ -0,0 +1,51 @@
+package com.pmattioli.campsite.reservations.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.User;
+
+/**
+ * Asynchronous variant of the {@link ReservationsService} operations that wait on the database.
+ * Operations run on a dedicated, bounded pool of threads instead of the caller's, so callers such as
+ * servlet container threads are free to serve other requests meanwhile.
+ * <p>
+ * Returned futures complete exceptionally with the very exception the matching {@link ReservationsService}
+ * operation throws, or with a {@link java.util.concurrent.RejectedExecutionException} if the pool
+ * and its queue are full.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public interface AsyncReservationsService {
+
+    /**
+     * @see ReservationsService#listReservationsWithinTimeRange(Instant, Integer, ReservationCursor, Integer)
+     */
+    CompletableFuture<ReservationPage> listReservationsWithinTimeRange(Instant startDate, Integer numberOfDays,
+            ReservationCursor after, Integer pageSize);
+
+    /**
+     * @see ReservationsService#createReservation(Long, User, Instant, Instant)
+     */
+    CompletableFuture<Reservation> createReservation(Long siteId, User userData, Instant startDate,
+            Instant endDate);
+
+    /**
+     * @see ReservationsService#applyBatch(List)
+     */
+    CompletableFuture<List<BatchResult>> applyBatch(List<BatchOperation> operations);
+
+    /**
+     * @see ReservationsService#updateReservation(Reservation)
+     */
+    CompletableFuture<Reservation> updateReservation(Reservation reservation);
+
+    /**
+     * @see ReservationsService#deleteReservation(Reservation)
+     */
+    CompletableFuture<Void> deleteReservation(Reservation reservation);
+
+}
@@ -0,0 +1,45 @@
+package com.pmattioli.campsite.reservations.service;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * A single operation within a batch applied through {@link ReservationsService#applyBatch(java.util.List)}.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class BatchOperation {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    private final Type type;
+
+    private final Reservation reservation;
+
+    public BatchOperation(final Type type, final Reservation reservation) {
+        this.type = type;
+        this.reservation = reservation;
+    }
+
+    public static BatchOperation create(final Reservation reservation) {
+        return new BatchOperation(Type.CREATE, reservation);
+    }
+
+    public static BatchOperation update(final Reservation reservation) {
+        return new BatchOperation(Type.UPDATE, reservation);
+    }
+
+    public static BatchOperation delete(final Reservation reservation) {
+        return new BatchOperation(Type.DELETE, reservation);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Reservation getReservation() {
+        return reservation;
+    }
+}
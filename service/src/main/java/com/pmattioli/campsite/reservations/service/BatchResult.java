@@ -0,0 +1,48 @@
+package com.pmattioli.campsite.reservations.service;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * Outcome of a {@link BatchOperation}: either the resulting reservation, or the exception the
+ * equivalent single operation would have thrown.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class BatchResult {
+
+    private final Reservation reservation;
+
+    private final RuntimeException error;
+
+    private BatchResult(final Reservation reservation, final RuntimeException error) {
+        this.reservation = reservation;
+        this.error = error;
+    }
+
+    public static BatchResult applied(final Reservation reservation) {
+        return new BatchResult(reservation, null);
+    }
+
+    public static BatchResult rejected(final RuntimeException error) {
+        return new BatchResult(null, error);
+    }
+
+    public boolean isApplied() {
+        return error == null;
+    }
+
+    /**
+     * @return the created, updated or deleted reservation, or {@code null} if the operation was rejected
+     */
+    public Reservation getReservation() {
+        return reservation;
+    }
+
+    /**
+     * @return why the operation was rejected, or {@code null} if it was applied
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+}
@@ -0,0 +1,27 @@
+package com.pmattioli.campsite.reservations.service;
+
+/**
+ * Thrown when a reservation can't be made or changed because of another reservation. This is an
+ * expected outcome whenever popular dates open up, so no stack trace is captured: filling it in
+ * would cost more than the rest of the rejection.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class ReservationConflictException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ReservationConflictException(final String message) {
+        super(message);
+    }
+
+    public ReservationConflictException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
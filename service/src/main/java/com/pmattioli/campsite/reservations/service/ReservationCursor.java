@@ -0,0 +1,85 @@
+package com.pmattioli.campsite.reservations.service;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * Position of a reservation within a listing sorted by start date and id. Pages following the
+ * cursor are looked up by seeking past that position, so every page costs the same no matter how
+ * deep it is.
+ * <p>
+ * Cursors are exchanged with clients as opaque, URL-safe strings (see {@link #encode()}).
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public final class ReservationCursor {
+
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Instant startDate;
+
+    private final Long id;
+
+    public ReservationCursor(final Instant startDate, final Long id) {
+        this.startDate = startDate;
+        this.id = id;
+    }
+
+    public static ReservationCursor after(final Reservation reservation) {
+        return new ReservationCursor(reservation.getStartDate(), reservation.getId());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given string isn't a cursor returned by {@link #encode()}
+     */
+    public static ReservationCursor decode(final String cursor) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            if (buffer.remaining() != ENCODED_BYTES) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            Instant startDate = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            return new ReservationCursor(startDate, buffer.getLong());
+        } catch (IllegalArgumentException | DateTimeException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES);
+        buffer.putLong(startDate.getEpochSecond()).putInt(startDate.getNano()).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public Instant getStartDate() {
+        return startDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        ReservationCursor that = (ReservationCursor) o;
+
+        if (!startDate.equals(that.startDate))
+            return false;
+        return id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * startDate.hashCode() + id.hashCode();
+    }
+}
@@ -0,0 +1,49 @@
+package com.pmattioli.campsite.reservations.service;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * Application event published by {@link ReservationsService} implementations whenever a
+ * {@link Reservation} is created, updated or deleted. Listeners keeping in-memory state in sync
+ * with the database are expected to consume it once the surrounding transaction has committed
+ * (see {@link org.springframework.transaction.event.TransactionalEventListener}).
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class ReservationEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+
+    private final Reservation reservation;
+
+    public ReservationEvent(final Type type, final Reservation reservation) {
+        this.type = type;
+        this.reservation = reservation;
+    }
+
+    public static ReservationEvent created(final Reservation reservation) {
+        return new ReservationEvent(Type.CREATED, reservation);
+    }
+
+    public static ReservationEvent updated(final Reservation reservation) {
+        return new ReservationEvent(Type.UPDATED, reservation);
+    }
+
+    public static ReservationEvent deleted(final Reservation reservation) {
+        return new ReservationEvent(Type.DELETED, reservation);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Reservation getReservation() {
+        return reservation;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.pmattioli.campsite.reservations.service;
+
+import java.util.List;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * A page of a reservation listing, sorted by start date and id.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ * @see ReservationsService#listReservationsWithinTimeRange(java.time.Instant, Integer, ReservationCursor, Integer)
+ */
+public class ReservationPage {
+
+    private final List<Reservation> reservations;
+
+    private final ReservationCursor next;
+
+    public ReservationPage(final List<Reservation> reservations, final ReservationCursor next) {
+        this.reservations = reservations;
+        this.next = next;
+    }
+
+    public List<Reservation> getReservations() {
+        return reservations;
+    }
+
+    /**
+     * @return the cursor for the following page, or {@code null} if this is the last page
+     */
+    public ReservationCursor getNext() {
+        return next;
+    }
+}
@@ -2,9 +2,11 @@ package com.pmattioli.campsite.reservations.service;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
 import com.pmattioli.campsite.reservations.data.repo.Reservation;
 import com.pmattioli.campsite.reservations.data.repo.User;
 
@@ -32,12 +34,124 @@ public interface ReservationsService {
      */
     List<Reservation> listReservationsWithinTimeRange(Instant startDate, Integer numberOfDays);
 
+    /**
+     * Lists the reservations 'conflicting' with the given time range (see
+     * {@link #listReservationsWithinTimeRange(Instant, Integer)}), given the calendar version the caller
+     * already read for it through {@link #getCalendarVersion(Instant, Integer)}, which saves reading it
+     * again. The listing is at least as recent as that version.
+     *
+     * @param  startDate start date (Instant) of time range for which campsite availability is requested
+     * @param  numberOfDays length of time range for which campsite availability is requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @param  calendarVersion the calendar version of the time range, read before calling this method
+     * @return reservations 'conflicting' with the given time range.
+     */
+    List<Reservation> listReservationsWithinTimeRange(Instant startDate, Integer numberOfDays, long calendarVersion);
+
+    /**
+     * Lists a page of the reservations 'conflicting' with the given time range (see
+     * {@link #listReservationsWithinTimeRange(Instant, Integer)}), sorted by start date and id.
+     * <p>
+     * If no length is provided for the time range (numberOfDays = null), the default will be used.
+     *
+     * @param  startDate start date (Instant) of time range for which campsite availability is requested
+     * @param  numberOfDays length of time range for which campsite availability is requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @param  after cursor returned along with the previous page, or {@code null} for the first page
+     * @param  pageSize maximum number of reservations in the page. Defaults to the
+     *                  {@code campsite.reservation.list.page.default-size} config parameter.
+     * @return the page, along with the cursor for the following one
+     * @throws IllegalArgumentException if the page size is lower than 1 or exceeds
+     * {@code campsite.reservation.list.page.maximum-size}
+     */
+    ReservationPage listReservationsWithinTimeRange(Instant startDate, Integer numberOfDays, ReservationCursor after,
+            Integer pageSize);
+
+    /**
+     * Performs the given action on every reservation 'conflicting' with the given time range (see
+     * {@link #listReservationsWithinTimeRange(Instant, Integer)}), in start date order, as they are
+     * read from the database. Reservations are never all held in memory at once, which makes this
+     * method suitable for time ranges of any length.
+     * <p>
+     * If no length is provided for the time range (numberOfDays = null), the default will be used.
+     *
+     * @param  startDate start date (Instant) of time range for which campsite availability is requested
+     * @param  numberOfDays length of time range for which campsite availability is requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @param  action action to be performed on each reservation. Reservations are detached once the
+     *                action returns.
+     */
+    void forEachReservationWithinTimeRange(Instant startDate, Integer numberOfDays, Consumer<Reservation> action);
+
+    /**
+     * Lists the reservations 'conflicting' with the given time range (see
+     * {@link #listReservationsWithinTimeRange(Instant, Integer)}), including the ones already moved to
+     * the archive, sorted by start date and id. Always reads from the database.
+     * <p>
+     * If no length is provided for the time range (numberOfDays = null), the default will be used.
+     *
+     * @param  startDate start date (Instant) of time range for which reservations are requested
+     * @param  numberOfDays length of time range for which reservations are requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @return live and archived reservations 'conflicting' with the given time range
+     */
+    List<Reservation> listReservationHistoryWithinTimeRange(Instant startDate, Integer numberOfDays);
+
+    /**
+     * Returns the version of the calendar for the given time range. The version is kept in the
+     * database, so it's the same on every application instance, and changes whenever the outcome of
+     * {@link #listReservationsWithinTimeRange(Instant, Integer)} for the same arguments does, never going
+     * back to a previous value, so it can be used as an entity tag for the listing.
+     *
+     * @param  startDate start date (Instant) of time range for which campsite availability is requested
+     * @param  numberOfDays length of time range for which campsite availability is requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @return an opaque version number
+     */
+    long getCalendarVersion(Instant startDate, Integer numberOfDays);
+
+    /**
+     * Lists the time ranges free of reservations at the given site within the given time range,
+     * sorted by start date.
+     * Unlike {@link #listReservationsWithinTimeRange(Instant, Integer)}, this method doesn't expose
+     * any information about the reservations nor their users.
+     * <p>
+     * If no length is provided for the time range (numberOfDays = null), the default will be used.
+     *
+     * @param  siteId site for which availability is requested. Defaults to {@link Reservation#DEFAULT_SITE_ID}.
+     * @param  startDate start date (Instant) of time range for which campsite availability is requested
+     * @param  numberOfDays length of time range for which campsite availability is requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @return the free time ranges, clipped to the given time range
+     */
+    List<DateRange> listAvailableDateRanges(Long siteId, Instant startDate, Integer numberOfDays);
+
+    /**
+     * Lists the sites free of reservations for the whole given time range.
+     *
+     * @param  startDate start date (Instant) of time range for which campsite availability is requested
+     * @param  numberOfDays length of time range for which campsite availability is requested (in days).
+     *                      Defaults to the {@code campsite.reservation.list.default} config parameter.
+     * @return the ids of the available sites, in ascending order
+     */
+    List<Long> listAvailableSites(Instant startDate, Integer numberOfDays);
+
+    /**
+     * Creates a reservation for the provided {@link User} between two
+     * given dates at the default site ({@link Reservation#DEFAULT_SITE_ID}).
+     *
+     * @see #createReservation(Long, User, Instant, Instant)
+     */
+    Reservation createReservation(User userData, Instant startDate, Instant endDate);
+
     /**
      * Creates a reservation for the provided {@link User} between two
-     * given dates. The length of the reservation cannot exceed the amount
+     * given dates at the given site. The length of the reservation cannot exceed the amount
      * of days specified by the {@code campsite.reservation.length.maximum}
      * configuration property.
      *
+     * @param  siteId site to be reserved, from 1 to {@code campsite.reservation.sites.count}.
+     *                Defaults to {@link Reservation#DEFAULT_SITE_ID}.
      * @param  userData  information about the user that will own the reservation
      * @param  startDate date (Instant) in which the reservation starts
      * @param  endDate date (Instant) in which the reservation ends
@@ -46,9 +160,33 @@ public interface ReservationsService {
      * @throws IllegalArgumentException if:
      * - length of stay exceeds {@code campsite.reservation.length.maximum} or
      * - reservation start date comes before {@code campsite.reservation.days-ahead.minimum} or
-     * - reservation start date comes after {@code campsite.reservation.days-ahead.maximum}
+     * - reservation start date comes after {@code campsite.reservation.days-ahead.maximum} or
+     * - the site doesn't exist
      */
-    Reservation createReservation(User userData, Instant startDate, Instant endDate);
+    Reservation createReservation(Long siteId, User userData, Instant startDate, Instant endDate);
+
+    /**
+     * Applies a batch of creations, updates and deletions within a transaction of its own, writing them
+     * through JDBC batches. Every operation is validated and checked the same way as its single
+     * counterpart, and is additionally checked for conflicts against the operations preceding it in
+     * the batch. Operations failing any check are rejected without affecting the rest.
+     * <p>
+     * Operations are checked before anything is written, so the database only refuses the writes of a
+     * batch because of concurrent ones. The batch is then applied over again, checking it against them,
+     * up to three times.
+     * <p>
+     * Stored reservations are checked as they were before the batch, so updates and deletions don't
+     * free up their dates for creations within the same batch.
+     *
+     * @param  operations the operations to apply, at most {@code campsite.reservation.batch.maximum-size}
+     * @return the result of every operation, in the same order
+     * @throws IllegalArgumentException if the batch exceeds {@code campsite.reservation.batch.maximum-size}
+     * @throws ReservationConflictException if the writes of the batch are still refused on its last attempt
+     * @see #createReservation(Long, User, Instant, Instant)
+     * @see #updateReservation(Reservation)
+     * @see #deleteReservation(Reservation)
+     */
+    List<BatchResult> applyBatch(List<BatchOperation> operations);
 
     /**
      * Updates a given {@link Reservation}, uniquely identified by its {@code id}.
@@ -57,6 +195,7 @@ public interface ReservationsService {
      * @param  reservation contains the information for the reservation that is to be updated,
      *                     uniquely identified by its {@code id}
      * @return the updated reservation information
+     * @throws IllegalArgumentException if the site doesn't exist
      * @throws ObjectOptimisticLockingFailureException if a stale copy of the reservation attempts
      * to be updated
      */
@@ -68,8 +207,8 @@ public interface ReservationsService {
      *
      * @param  reservation contains the information for the reservation that is to be deleted,
      *                     uniquely identified by its {@code id}
-     * @throws ObjectOptimisticLockingFailureException if a stale copy of the reservation attempts
-     * to be deleted
+     * @throws ObjectOptimisticLockingFailureException if a stale copy of the reservation, or one that's
+     * no longer stored, attempts to be deleted
      */
     void deleteReservation(Reservation reservation);
 
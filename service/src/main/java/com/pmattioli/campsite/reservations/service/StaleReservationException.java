@@ -0,0 +1,26 @@
+package com.pmattioli.campsite.reservations.service;
+
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * Thrown when a stale copy of a reservation is detected before reaching the database. Like
+ * {@link ReservationConflictException}, it's an expected outcome and captures no stack trace.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public class StaleReservationException extends ObjectOptimisticLockingFailureException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StaleReservationException(final Long reservationId) {
+        super(Reservation.class, reservationId);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
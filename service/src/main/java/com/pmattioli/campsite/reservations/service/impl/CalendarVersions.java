@@ -0,0 +1,142 @@
+package com.pmattioli.campsite.reservations.service.impl;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pmattioli.campsite.reservations.data.repo.CalendarDay;
+import com.pmattioli.campsite.reservations.data.repo.CalendarDayRepository;
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
+import com.pmattioli.campsite.reservations.service.index.EpochDays;
+
+/**
+ * Versions of the reservation calendar, which tell whether a listing changed without reading it.
+ * <p>
+ * Every write bumps the version of all the calendar days touched by the reservations it changes,
+ * within its own transaction, so the sum of the versions of the days a listing covers changes along
+ * with the listing, the same on every application instance. Versions only ever go up, so the sum
+ * for a time range never comes back to a value it had before.
+ * <p>
+ * Days are bumped in ascending order, one statement per run of consecutive days, so concurrent
+ * writes lock them in the same order. Rows for days never bumped before are created in a
+ * transaction of their own.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+public class CalendarVersions {
+
+    @Autowired
+    private CalendarDayRepository dayRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate dayTransaction;
+
+    @Autowired
+    public CalendarVersions(final PlatformTransactionManager transactionManager) {
+        dayTransaction = new TransactionTemplate(transactionManager);
+        dayTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * @return the version of the calendar days touched by the given time range
+     */
+    public long get(final Instant startDate, final Instant endDate) {
+        return dayRepository.sumVersionsWithin(LocalDate.ofEpochDay(EpochDays.floor(startDate)),
+                LocalDate.ofEpochDay(EpochDays.ceil(endDate)));
+    }
+
+    public void bump(final Instant startDate, final Instant endDate) {
+        bump(Collections.singletonList(new DateRange(startDate, endDate)));
+    }
+
+    /**
+     * Bumps the version of every calendar day touched by any of the given time ranges, once. Has to be
+     * called within the transaction writing the reservations, as late as possible, as the days stay
+     * locked until it ends.
+     */
+    public void bump(final Collection<DateRange> ranges) {
+        List<long[]> days = new ArrayList<>(ranges.size());
+        for (DateRange range : ranges) {
+            days.add(new long[] { EpochDays.floor(range.getStartDate()), EpochDays.ceil(range.getEndDate()) });
+        }
+        days.sort(Comparator.comparingLong(range -> range[0]));
+
+        long[] run = null;
+        for (long[] range : days) {
+            if (run != null && range[0] <= run[1]) {
+                run[1] = Math.max(run[1], range[1]);
+                continue;
+            }
+            if (run != null) {
+                bump(run[0], run[1]);
+            }
+            run = range;
+        }
+        if (run != null) {
+            bump(run[0], run[1]);
+        }
+    }
+
+    private void bump(final long fromDay, final long toDay) {
+        if (fromDay >= toDay) {
+            return;
+        }
+        LocalDate from = LocalDate.ofEpochDay(fromDay);
+        LocalDate to = LocalDate.ofEpochDay(toDay);
+        if (dayRepository.bumpVersionsWithin(from, to) < toDay - fromDay) {
+            // Days bumped twice only go up faster
+            createDays(from, to);
+            dayRepository.bumpVersionsWithin(from, to);
+        }
+    }
+
+    /**
+     * Creates the missing rows of the given days in a transaction of their own, so a row created by a
+     * concurrent transaction doesn't doom the caller's. Each failed attempt means another transaction
+     * created at least one of the rows, so there are at most as many attempts as days.
+     */
+    private void createDays(final LocalDate from, final LocalDate to) {
+        for (long attempt = from.until(to, ChronoUnit.DAYS); ; attempt--) {
+            try {
+                dayTransaction.execute(status -> {
+                    Set<LocalDate> existingDays = new HashSet<>(dayRepository.findDaysWithin(from, to));
+                    for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+                        if (!existingDays.contains(day)) {
+                            // Rows are always new, so they're persisted without the select a merge would issue
+                            entityManager.persist(new CalendarDay(day));
+                        }
+                    }
+                    dayRepository.flush();
+                    return null;
+                });
+                return;
+            } catch (DataIntegrityViolationException ex) {
+                if (attempt <= 1) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.pmattioli.campsite.reservations.service.impl;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.service.AsyncReservationsService;
+import com.pmattioli.campsite.reservations.service.BatchOperation;
+import com.pmattioli.campsite.reservations.service.BatchResult;
+import com.pmattioli.campsite.reservations.service.ReservationCursor;
+import com.pmattioli.campsite.reservations.service.ReservationPage;
+import com.pmattioli.campsite.reservations.service.ReservationsService;
+
+/**
+ * Runs {@link ReservationsService} operations on a fixed pool of {@code campsite.reservation.async.pool-size}
+ * threads, queueing at most {@code campsite.reservation.async.queue-capacity} of them. Operations
+ * beyond that are rejected right away instead of piling up.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Service
+public class ExecutorAsyncReservationsService implements AsyncReservationsService {
+
+    @Autowired
+    private ReservationsService reservationsService;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public ExecutorAsyncReservationsService(@Value("${campsite.reservation.async.pool-size}") final int poolSize,
+            @Value("${campsite.reservation.async.queue-capacity}") final int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("reservations-async-"));
+    }
+
+    @Override
+    public CompletableFuture<ReservationPage> listReservationsWithinTimeRange(final Instant startDate,
+            final Integer numberOfDays, final ReservationCursor after, final Integer pageSize) {
+        return supply(() -> reservationsService.listReservationsWithinTimeRange(startDate, numberOfDays, after,
+                pageSize));
+    }
+
+    @Override
+    public CompletableFuture<Reservation> createReservation(final Long siteId, final User userData,
+            final Instant startDate, final Instant endDate) {
+        return supply(() -> reservationsService.createReservation(siteId, userData, startDate, endDate));
+    }
+
+    @Override
+    public CompletableFuture<List<BatchResult>> applyBatch(final List<BatchOperation> operations) {
+        return supply(() -> reservationsService.applyBatch(operations));
+    }
+
+    @Override
+    public CompletableFuture<Reservation> updateReservation(final Reservation reservation) {
+        return supply(() -> reservationsService.updateReservation(reservation));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteReservation(final Reservation reservation) {
+        return supply(() -> {
+            reservationsService.deleteReservation(reservation);
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> supply(final Supplier<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        // Operations have to join the caller's transaction, which is bound to the caller's thread
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            complete(future, operation);
+            return future;
+        }
+
+        try {
+            executor.execute(() -> complete(future, operation));
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Completes the future directly, rather than through {@link CompletableFuture#supplyAsync(Supplier)},
+     * so failures aren't wrapped in a {@link java.util.concurrent.CompletionException}.
+     */
+    private static <T> void complete(final CompletableFuture<T> future, final Supplier<T> operation) {
+        try {
+            future.complete(operation.get());
+        } catch (Throwable ex) {
+            future.completeExceptionally(ex);
+        }
+    }
+
+}
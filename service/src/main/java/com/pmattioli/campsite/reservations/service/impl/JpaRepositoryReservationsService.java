@@ -1,40 +1,142 @@
 package com.pmattioli.campsite.reservations.service.impl;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
+import com.pmattioli.campsite.reservations.data.repo.ArchivedReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
 import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNight;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNightRepository;
 import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
 import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.BatchOperation;
+import com.pmattioli.campsite.reservations.service.BatchResult;
+import com.pmattioli.campsite.reservations.service.ReservationConflictException;
+import com.pmattioli.campsite.reservations.service.ReservationCursor;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+import com.pmattioli.campsite.reservations.service.ReservationPage;
 import com.pmattioli.campsite.reservations.service.ReservationsService;
+import com.pmattioli.campsite.reservations.service.StaleReservationException;
+import com.pmattioli.campsite.reservations.service.index.EpochDays;
+import com.pmattioli.campsite.reservations.service.index.NightClaims;
+import com.pmattioli.campsite.reservations.service.index.OccupancyIndex;
+import com.pmattioli.campsite.reservations.service.index.ReservationListingCache;
+import com.pmattioli.campsite.reservations.service.index.UserIdCache;
 
 @Service
 public class JpaRepositoryReservationsService implements ReservationsService {
 
+    private static final String CONFLICT_MESSAGE = "An existing reservation conflicts with the selected dates";
+
+    private static final String USER_CONFLICT_MESSAGE =
+            "Another reservation for the same email is being made, please try again";
+
+    private static final int MAXIMUM_BATCH_ATTEMPTS = 3;
+
     @Value("${campsite.reservation.length.maximum}")
     private int maximumLengthOfStay;
 
     @Value("${campsite.reservation.list.default}")
     private int defaultLength;
 
+    @Value("${campsite.reservation.list.page.default-size}")
+    private int defaultPageSize;
+
+    @Value("${campsite.reservation.list.page.maximum-size}")
+    private int maximumPageSize;
+
     @Value("${campsite.reservation.days-ahead.minimum}")
     private int minimumDaysAhead;
 
     @Value("${campsite.reservation.days-ahead.maximum}")
     private int maximumDaysAhead;
 
+    @Value("${campsite.reservation.sites.count}")
+    private int siteCount;
+
+    @Value("${campsite.reservation.night-table.enabled}")
+    private boolean nightTableEnabled;
+
+    @Value("${campsite.reservation.batch.maximum-size}")
+    private int maximumBatchSize;
+
     @Autowired
     private ReservationRepository repository;
 
-    private void areDatesAvailable(final Instant startDate, Integer numberOfDays) {
+    @Autowired
+    private ReservationNightRepository nightRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserIdCache userIdCache;
+
+    @Autowired(required = false)
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private NightClaims nightClaims;
+
+    @Autowired
+    private ArchivedReservationRepository archivedRepository;
+
+    @Autowired
+    private ReservationListingCache listingCache;
+
+    @Autowired
+    private CalendarVersions calendarVersions;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate batchTransaction;
+
+    private TransactionTemplate userTransaction;
+
+    @Autowired
+    public void setTransactionManager(final PlatformTransactionManager transactionManager) {
+        batchTransaction = new TransactionTemplate(transactionManager);
+        batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        userTransaction = new TransactionTemplate(transactionManager);
+        userTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    private void validateDates(final Instant startDate, Integer numberOfDays) {
 
         Instant today = Instant.now().truncatedTo(ChronoUnit.DAYS);
 
@@ -52,44 +154,385 @@ public class JpaRepositoryReservationsService implements ReservationsService {
             throw new IllegalArgumentException("Reservations can't be made more than " + maximumDaysAhead
                     + " days in advance");
         }
+    }
+
+    private Long validateSite(final Long siteId) {
+
+        if (siteId == null) {
+            return Reservation.DEFAULT_SITE_ID;
+        }
+
+        if (siteId < 1 || siteId > siteCount) {
+            throw new IllegalArgumentException("Site " + siteId + " doesn't exist. Sites go from 1 to " + siteCount);
+        }
+        return siteId;
+    }
+
+    /**
+     * Validates the site of an updated reservation, which stays at its stored site unless given another.
+     */
+    private Long validateSite(final Long siteId, final Reservation stored) {
+
+        if (siteId == null && stored != null) {
+            return stored.getSiteId();
+        }
+        return validateSite(siteId);
+    }
+
+    private NightClaims.Claim claimDates(final Long siteId, final Instant startDate, final Instant endDate) {
+
+        // Claimed nights can't be claimed by concurrent requests for overlapping dates, so no two of
+        // them can pass the availability check before either of them commits
+        NightClaims.Claim claim = nightClaims.tryClaim(siteId, startDate, endDate);
+        if (claim == null) {
+            throw new ReservationConflictException(CONFLICT_MESSAGE);
+        }
+
+        // The index is checked once the nights are claimed, as a concurrent write holds its claim until
+        // after the index has been updated with it
+        if (occupancyIndex != null && occupancyIndex.isOccupied(siteId, startDate, endDate)) {
+            claim.release();
+            throw new ReservationConflictException(CONFLICT_MESSAGE);
+        }
+        return claim;
+    }
+
+    /**
+     * Checks the database for conflicting reservations, unless the {@link OccupancyIndex} is enabled, in
+     * which case it's already been checked by {@link #claimDates(Long, Instant, Instant)}.
+     */
+    private void areDatesAvailable(final Long siteId, final Instant startDate, final Instant endDate) {
+
+        if (occupancyIndex == null && repository.existsSiteReservationConflictingWithRange(siteId, startDate,
+                endDate)) {
+            throw new ReservationConflictException(CONFLICT_MESSAGE);
+        }
+    }
+
+    /**
+     * Finds the stored user with the email of the given one, storing the given one if there's none.
+     * The stored user takes the names of the given one, so a guest can correct them. Repeat guests
+     * giving the same names are resolved through the {@link UserIdCache} without querying.
+     */
+    private User resolveUser(final User userData) {
 
-        List<com.pmattioli.campsite.reservations.data.repo.Reservation> reservationsConflictingWithRange = repository
-                .findReservationsConflictingWithRange(startDate, startDate.plus(numberOfDays, ChronoUnit.DAYS));
+        if (userData == null || userData.getId() != null || userData.getEmail() == null) {
+            return userData;
+        }
 
-        Assert.state(reservationsConflictingWithRange != null,
-                "Illegal state: 'reservationsConflictingWithRange' list is null");
+        Long userId = userIdCache.get(userData);
+        if (userId != null) {
+            return userRepository.getOne(userId);
+        }
 
-        if (!reservationsConflictingWithRange.isEmpty()) {
-            throw new IllegalStateException("An existing reservation conflicts with the selected dates");
+        User user = userRepository.findByEmail(userData.getEmail()).orElse(null);
+        if (user == null) {
+            // The user is stored in a transaction of its own, so losing a race for the same email doesn't
+            // doom the caller's transaction, and the user stored by the winner is used instead. The one
+            // stored here is detached, so the caller's persistence context gets a reference to it
+            try {
+                User storedUser = userTransaction.execute(status -> userRepository.saveAndFlush(userData));
+                userIdCache.put(storedUser);
+                return userRepository.getOne(storedUser.getId());
+            } catch (DataIntegrityViolationException ex) {
+                user = userRepository.findByEmail(userData.getEmail())
+                        .orElseThrow(() -> new ReservationConflictException(USER_CONFLICT_MESSAGE, ex));
+            }
         }
+        // The user is managed, so changed names are written along with the reservation
+        user.setFirstName(userData.getFirstName());
+        user.setLastName(userData.getLastName());
+        userIdCache.put(user);
+        return user;
+    }
+
+    /**
+     * Writes one row per night occupied by the reservation, letting the unique constraint on the
+     * site and night reject any overlapping reservation.
+     */
+    private void saveNights(final Reservation reservation) {
+
+        try {
+            nightRepository.saveAll(nightsOf(reservation));
+            nightRepository.flush();
+        } catch (DataIntegrityViolationException ex) {
+            throw new ReservationConflictException(CONFLICT_MESSAGE, ex);
+        }
+    }
+
+    private static List<ReservationNight> nightsOf(final Reservation reservation) {
+
+        List<ReservationNight> nights = new ArrayList<>();
+        long[] days = EpochDays.nights(reservation.getStartDate(), reservation.getEndDate());
+        for (long day = days[0]; day < days[1]; day++) {
+            nights.add(new ReservationNight(LocalDate.ofEpochDay(day), reservation));
+        }
+        return nights;
     }
 
     @Override
     public List<Reservation> listReservationsWithinTimeRange(final Instant startDate, Integer numberOfDays) {
+        return listReservationsWithinTimeRange(startDate, numberOfDays, getCalendarVersion(startDate, numberOfDays));
+    }
+
+    @Override
+    public List<Reservation> listReservationsWithinTimeRange(final Instant startDate, Integer numberOfDays,
+            final long calendarVersion) {
+        if (numberOfDays == null) {
+            numberOfDays = defaultLength;
+        }
+        Instant endDate = startDate.plus(numberOfDays, ChronoUnit.DAYS);
+
+        // The cache only holds committed reservations, so reads taking part in a transaction have
+        // to go to the database in order to see the transaction's own writes
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return listingCache.get(startDate, endDate, calendarVersion,
+                    repository::listReservationsConflictingWithRange);
+        }
+        return repository.listReservationsConflictingWithRange(startDate, endDate);
+    }
+
+    @Override
+    public ReservationPage listReservationsWithinTimeRange(final Instant startDate, Integer numberOfDays,
+            final ReservationCursor after, Integer pageSize) {
+        if (numberOfDays == null) {
+            numberOfDays = defaultLength;
+        }
+        if (pageSize == null) {
+            pageSize = defaultPageSize;
+        }
+        if (pageSize < 1 || pageSize > maximumPageSize) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + maximumPageSize + ". "
+                    + "Default: " + defaultPageSize);
+        }
+        Instant endDate = startDate.plus(numberOfDays, ChronoUnit.DAYS);
+
+        // One extra row tells whether there's a following page, without a count query
+        PageRequest pageRequest = PageRequest.of(0, pageSize + 1);
+        List<Reservation> reservations = after == null
+                ? repository.findReservationPageConflictingWithRange(startDate, endDate, pageRequest)
+                : repository.findReservationPageConflictingWithRangeAfter(startDate, endDate, after.getStartDate(),
+                        after.getId(), pageRequest);
+
+        if (reservations.size() <= pageSize) {
+            return new ReservationPage(reservations, null);
+        }
+        reservations = new ArrayList<>(reservations.subList(0, pageSize));
+        return new ReservationPage(reservations, ReservationCursor.after(reservations.get(pageSize - 1)));
+    }
+
+    @Override
+    @Transactional
+    public void forEachReservationWithinTimeRange(final Instant startDate, Integer numberOfDays,
+            final Consumer<Reservation> action) {
+        if (numberOfDays == null) {
+            numberOfDays = defaultLength;
+        }
+
+        try (Stream<Reservation> reservations = repository.streamReservationsConflictingWithRange(startDate,
+                startDate.plus(numberOfDays, ChronoUnit.DAYS))) {
+            reservations.forEach(reservation -> {
+                action.accept(reservation);
+                // Visited reservations (and their users) are dropped from the persistence context, so
+                // it doesn't grow with the size of the result
+                entityManager.detach(reservation);
+            });
+        }
+    }
+
+    @Override
+    public List<Reservation> listReservationHistoryWithinTimeRange(final Instant startDate, Integer numberOfDays) {
+        if (numberOfDays == null) {
+            numberOfDays = defaultLength;
+        }
+        Instant endDate = startDate.plus(numberOfDays, ChronoUnit.DAYS);
+
+        // Live reservations are read first, so one archived in the meantime is found twice rather than
+        // missed, and the archived copy is dropped
+        Map<Long, Reservation> reservationsById = new HashMap<>();
+        for (Reservation reservation : repository.listReservationsConflictingWithRange(startDate, endDate)) {
+            reservationsById.put(reservation.getId(), reservation);
+        }
+        for (Reservation reservation : archivedRepository.listReservationsConflictingWithRange(startDate, endDate)) {
+            reservationsById.putIfAbsent(reservation.getId(), reservation);
+        }
+
+        List<Reservation> reservations = new ArrayList<>(reservationsById.values());
+        reservations.sort(Comparator.comparing(Reservation::getStartDate).thenComparing(Reservation::getId));
+        return reservations;
+    }
+
+    @Override
+    public long getCalendarVersion(final Instant startDate, Integer numberOfDays) {
+        if (numberOfDays == null) {
+            numberOfDays = defaultLength;
+        }
+        return calendarVersions.get(startDate, startDate.plus(numberOfDays, ChronoUnit.DAYS));
+    }
+
+    @Override
+    public List<DateRange> listAvailableDateRanges(final Long siteId, final Instant startDate,
+            Integer numberOfDays) {
+        if (numberOfDays == null) {
+            numberOfDays = defaultLength;
+        }
+        Instant endDate = startDate.plus(numberOfDays, ChronoUnit.DAYS);
+
+        List<DateRange> availableRanges = new ArrayList<>();
+        Instant availableFrom = startDate;
+        for (DateRange occupiedRange : repository.findOccupiedRangesWithinRange(validateSite(siteId), startDate,
+                endDate)) {
+            if (occupiedRange.getStartDate().isAfter(availableFrom)) {
+                availableRanges.add(new DateRange(availableFrom, occupiedRange.getStartDate()));
+            }
+            if (occupiedRange.getEndDate().isAfter(availableFrom)) {
+                availableFrom = occupiedRange.getEndDate();
+            }
+        }
+        if (availableFrom.isBefore(endDate)) {
+            availableRanges.add(new DateRange(availableFrom, endDate));
+        }
+        return availableRanges;
+    }
+
+    @Override
+    public List<Long> listAvailableSites(final Instant startDate, Integer numberOfDays) {
         if (numberOfDays == null) {
             numberOfDays = defaultLength;
         }
-        return repository.findReservationsConflictingWithRange(startDate, startDate.plus(numberOfDays, ChronoUnit.DAYS));
+        Instant endDate = startDate.plus(numberOfDays, ChronoUnit.DAYS);
+
+        if (occupancyIndex != null) {
+            return occupancyIndex.findAvailableSites(startDate, endDate);
+        }
+
+        // Every site is checked with a single query rather than one per site
+        List<Long> availableSiteIds = LongStream.rangeClosed(1, siteCount).boxed().collect(Collectors.toList());
+        Set<Long> occupiedSiteIds = new HashSet<>(repository.findOccupiedSitesWithinRange(availableSiteIds,
+                startDate, endDate));
+        availableSiteIds.removeIf(occupiedSiteIds::contains);
+        return availableSiteIds;
     }
 
     @Override
     @Transactional
     public Reservation createReservation(final User userData, final Instant startDate, final Instant endDate) {
+        return createReservation(Reservation.DEFAULT_SITE_ID, userData, startDate, endDate);
+    }
+
+    @Override
+    @Transactional
+    public Reservation createReservation(Long siteId, final User userData, final Instant startDate,
+            final Instant endDate) {
+
+        int numberOfDays = (int) ChronoUnit.DAYS.between(startDate, endDate);
+
+        validateDates(startDate, numberOfDays);
+        siteId = validateSite(siteId);
 
-        areDatesAvailable(startDate, (int) ChronoUnit.DAYS.between(startDate, endDate));
+        NightClaims.Claim claim = claimDates(siteId, startDate, endDate);
 
         Reservation newReservation = new Reservation(startDate, endDate, userData);
+        newReservation.setSiteId(siteId);
+        try {
+            newReservation.setUser(resolveUser(userData));
+            if (nightTableEnabled) {
+                newReservation = repository.save(newReservation);
+                saveNights(newReservation);
+            } else {
+                areDatesAvailable(siteId, startDate, startDate.plus(numberOfDays, ChronoUnit.DAYS));
+                newReservation = repository.save(newReservation);
+            }
+        } catch (RuntimeException ex) {
+            claim.release();
+            throw ex;
+        }
+
+        claim.releaseOnCompletion();
 
-        return repository.save(newReservation);
+        calendarVersions.bump(startDate, endDate);
+        eventPublisher.publishEvent(ReservationEvent.created(newReservation));
+
+        return newReservation;
 
     }
 
+    @Override
+    public List<BatchResult> applyBatch(final List<BatchOperation> operations) {
+        Assert.isTrue(operations.size() <= maximumBatchSize,
+                "Batches can't exceed " + maximumBatchSize + " operations");
+
+        // Operations are checked against the stored reservations before anything is written, so the flush
+        // is only refused because of concurrent writes. The batch is then applied over again, in a new
+        // transaction which sees them and rejects the operations they conflict with up front
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return batchTransaction.execute(status -> applyBatchOnce(operations));
+            } catch (DataIntegrityViolationException ex) {
+                if (attempt == MAXIMUM_BATCH_ATTEMPTS) {
+                    throw new ReservationConflictException(CONFLICT_MESSAGE, ex);
+                }
+            } catch (ObjectOptimisticLockingFailureException ex) {
+                if (attempt == MAXIMUM_BATCH_ATTEMPTS) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private List<BatchResult> applyBatchOnce(final List<BatchOperation> operations) {
+
+        Batch batch = new Batch(operations);
+        List<BatchResult> results = new ArrayList<>(operations.size());
+        for (BatchOperation operation : operations) {
+            try {
+                results.add(BatchResult.applied(batch.apply(operation)));
+            } catch (IllegalArgumentException | IllegalStateException | ObjectOptimisticLockingFailureException ex) {
+                results.add(BatchResult.rejected(ex));
+            }
+        }
+
+        // The whole batch is written by a single flush, so its rows are sent through JDBC batches
+        if (nightTableEnabled) {
+            batch.writeNights();
+        }
+        repository.flush();
+
+        calendarVersions.bump(batch.changedDates);
+        batch.events.forEach(eventPublisher::publishEvent);
+
+        return results;
+    }
+
     @Override
     @Transactional
     public Reservation updateReservation(final Reservation reservation) {
         Assert.notNull(reservation.getId(), "Reservation ID cannot be null for UPDATE operations");
         Assert.notNull(reservation.getVersion(), "Reservation version cannot be null for UPDATE operations");
-        return repository.save(reservation);
+
+        // Loading the current state up front doesn't cost an extra query, as merging has to load it anyway.
+        // The days it's moved away from change as well
+        Reservation current = repository.findById(reservation.getId()).orElse(null);
+        List<DateRange> changedDates = new ArrayList<>(2);
+        if (current != null) {
+            changedDates.add(new DateRange(current.getStartDate(), current.getEndDate()));
+        }
+
+        reservation.setSiteId(validateSite(reservation.getSiteId(), current));
+        reservation.setUser(resolveUser(reservation.getUser()));
+
+        Reservation updatedReservation = repository.save(reservation);
+
+        if (nightTableEnabled) {
+            nightRepository.deleteByReservationId(updatedReservation.getId());
+            saveNights(updatedReservation);
+        }
+
+        changedDates.add(new DateRange(updatedReservation.getStartDate(), updatedReservation.getEndDate()));
+        calendarVersions.bump(changedDates);
+        eventPublisher.publishEvent(ReservationEvent.updated(updatedReservation));
+
+        return updatedReservation;
     }
 
     @Override
@@ -97,6 +540,240 @@ public class JpaRepositoryReservationsService implements ReservationsService {
     public void deleteReservation(final Reservation reservation) {
         Assert.notNull(reservation.getId(), "Reservation ID cannot be null for DELETE operations");
         Assert.notNull(reservation.getVersion(), "Reservation version cannot be null for DELETE operations");
-        repository.delete(reservation);
+        // The stored copy is the one deleted, so the user and dates the given one holds are never looked at
+        Reservation stored = repository.findById(reservation.getId()).orElse(null);
+        if (stored == null || !stored.getVersion().equals(reservation.getVersion())) {
+            throw new StaleReservationException(reservation.getId());
+        }
+        if (nightTableEnabled) {
+            nightRepository.deleteByReservationId(stored.getId());
+        }
+
+        repository.delete(stored);
+
+        calendarVersions.bump(stored.getStartDate(), stored.getEndDate());
+        eventPublisher.publishEvent(ReservationEvent.deleted(stored));
+    }
+
+    /**
+     * State of a batch being applied: the stored reservations it changes, the dates taken so far
+     * and the events to be published once it's flushed.
+     * <p>
+     * With the night table enabled, the nights taken so far are checked and written by the batch as
+     * well: night rows are only written once every operation has been applied, right before the flush,
+     * as deleting the nights of a reservation is a bulk statement which would flush the rows before it.
+     */
+    private final class Batch {
+
+        private final Instant windowStart;
+
+        private final Instant windowEnd;
+
+        private final Map<Long, Reservation> storedById = new HashMap<>();
+
+        private final Map<Long, List<DateRange>> storedRangesBySite = new HashMap<>();
+
+        private final Map<Long, List<DateRange>> batchRangesBySite = new HashMap<>();
+
+        private final Set<Long> changedIds = new HashSet<>();
+
+        private final List<ReservationEvent> events = new ArrayList<>();
+
+        private final List<DateRange> changedDates = new ArrayList<>();
+
+        private final Map<Long, Map<LocalDate, Long>> takenNightsBySite = new HashMap<>();
+
+        private final List<ReservationNight> newNights = new ArrayList<>();
+
+        private final List<Long> releasedIds = new ArrayList<>();
+
+        private Batch(final List<BatchOperation> operations) {
+            windowStart = Instant.now().truncatedTo(ChronoUnit.DAYS);
+            windowEnd = windowStart.plus(maximumDaysAhead + maximumLengthOfStay + 1, ChronoUnit.DAYS);
+
+            // Reservations being updated or deleted are loaded with a single query
+            Set<Long> ids = new HashSet<>();
+            for (BatchOperation operation : operations) {
+                if (operation.getType() != BatchOperation.Type.CREATE && operation.getReservation().getId() != null) {
+                    ids.add(operation.getReservation().getId());
+                }
+            }
+            if (!ids.isEmpty()) {
+                for (Reservation stored : repository.findAllById(ids)) {
+                    storedById.put(stored.getId(), stored);
+                }
+            }
+        }
+
+        private Reservation apply(final BatchOperation operation) {
+            switch (operation.getType()) {
+                case CREATE:
+                    return create(operation.getReservation());
+                case UPDATE:
+                    return update(operation.getReservation());
+                default:
+                    return delete(operation.getReservation());
+            }
+        }
+
+        private Reservation create(final Reservation reservation) {
+            Assert.notNull(reservation.getUser(), "User cannot be null");
+            Instant startDate = reservation.getStartDate();
+            Instant endDate = reservation.getEndDate();
+            validateDates(startDate, (int) ChronoUnit.DAYS.between(startDate, endDate));
+            Long siteId = validateSite(reservation.getSiteId());
+
+            DateRange dates = new DateRange(startDate, endDate);
+            // With the index enabled the stored reservations are checked by claimDates instead
+            if (occupancyIndex == null
+                    && overlaps(storedRangesBySite.computeIfAbsent(siteId, this::loadStoredRanges), dates)) {
+                throw new ReservationConflictException(CONFLICT_MESSAGE);
+            }
+            NightClaims.Claim claim = claimDates(siteId, startDate, endDate);
+            try {
+                if (nightTableEnabled) {
+                    checkNights(siteId, null, startDate, endDate);
+                }
+                takeDates(siteId, dates);
+            } catch (RuntimeException ex) {
+                claim.release();
+                throw ex;
+            }
+            claim.releaseOnCompletion();
+
+            Reservation newReservation = new Reservation(startDate, endDate, resolveUser(reservation.getUser()));
+            newReservation.setSiteId(siteId);
+            newReservation = repository.save(newReservation);
+            if (nightTableEnabled) {
+                takeNights(newReservation);
+            }
+
+            changedDates.add(dates);
+            events.add(ReservationEvent.created(newReservation));
+            return newReservation;
+        }
+
+        private Reservation update(final Reservation reservation) {
+            Assert.notNull(reservation.getId(), "Reservation ID cannot be null for UPDATE operations");
+            Assert.notNull(reservation.getVersion(), "Reservation version cannot be null for UPDATE operations");
+            Reservation stored = changeStored(reservation);
+            reservation.setSiteId(validateSite(reservation.getSiteId(), stored));
+            reservation.setUser(resolveUser(reservation.getUser()));
+
+            // As through updateReservation, only conflicts with the rest of the batch are checked, along
+            // with the stored nights the database would refuse
+            if (nightTableEnabled) {
+                checkNights(reservation.getSiteId(), reservation.getId(), reservation.getStartDate(),
+                        reservation.getEndDate());
+            }
+            takeDates(reservation.getSiteId(), new DateRange(reservation.getStartDate(), reservation.getEndDate()));
+
+            changedDates.add(new DateRange(stored.getStartDate(), stored.getEndDate()));
+            Reservation updatedReservation = repository.save(reservation);
+            if (nightTableEnabled) {
+                releasedIds.add(updatedReservation.getId());
+                takeNights(updatedReservation);
+            }
+
+            changedDates.add(new DateRange(updatedReservation.getStartDate(), updatedReservation.getEndDate()));
+            events.add(ReservationEvent.updated(updatedReservation));
+            return updatedReservation;
+        }
+
+        private Reservation delete(final Reservation reservation) {
+            Assert.notNull(reservation.getId(), "Reservation ID cannot be null for DELETE operations");
+            Assert.notNull(reservation.getVersion(), "Reservation version cannot be null for DELETE operations");
+            Reservation stored = changeStored(reservation);
+
+            if (nightTableEnabled) {
+                releasedIds.add(stored.getId());
+            }
+            repository.delete(stored);
+
+            changedDates.add(new DateRange(stored.getStartDate(), stored.getEndDate()));
+            events.add(ReservationEvent.deleted(stored));
+            return stored;
+        }
+
+        /**
+         * @return the stored copy of the given reservation
+         * @throws StaleReservationException if the given copy is stale
+         */
+        private Reservation changeStored(final Reservation reservation) {
+            if (!changedIds.add(reservation.getId())) {
+                throw new ReservationConflictException("Reservation " + reservation.getId()
+                        + " can't be changed more than once in a batch");
+            }
+            Reservation stored = storedById.get(reservation.getId());
+            if (stored == null || !stored.getVersion().equals(reservation.getVersion())) {
+                throw new StaleReservationException(reservation.getId());
+            }
+            return stored;
+        }
+
+        private void takeDates(final Long siteId, final DateRange dates) {
+            List<DateRange> batchRanges = batchRangesBySite.computeIfAbsent(siteId, id -> new ArrayList<>());
+            if (overlaps(batchRanges, dates)) {
+                throw new ReservationConflictException(CONFLICT_MESSAGE);
+            }
+            batchRanges.add(dates);
+        }
+
+        private List<DateRange> loadStoredRanges(final Long siteId) {
+            return repository.findOccupiedRangesWithinRange(siteId, windowStart, windowEnd);
+        }
+
+        /**
+         * Checks the given dates against the nights stored before the batch and the ones taken by the
+         * operations preceding it, other than the ones of the given reservation.
+         */
+        private void checkNights(final Long siteId, final Long reservationId, final Instant startDate,
+                final Instant endDate) {
+            Map<LocalDate, Long> takenNights = takenNightsBySite.computeIfAbsent(siteId, this::loadStoredNights);
+            long[] days = EpochDays.nights(startDate, endDate);
+            for (long day = days[0]; day < days[1]; day++) {
+                Long takenBy = takenNights.get(LocalDate.ofEpochDay(day));
+                if (takenBy != null && !takenBy.equals(reservationId)) {
+                    throw new ReservationConflictException(CONFLICT_MESSAGE);
+                }
+            }
+        }
+
+        private void takeNights(final Reservation reservation) {
+            Map<LocalDate, Long> takenNights = takenNightsBySite.get(reservation.getSiteId());
+            for (ReservationNight night : nightsOf(reservation)) {
+                takenNights.put(night.getNight(), reservation.getId());
+                newNights.add(night);
+            }
+        }
+
+        private Map<LocalDate, Long> loadStoredNights(final Long siteId) {
+            Map<LocalDate, Long> takenNights = new HashMap<>();
+            for (ReservationNight night : nightRepository.findNightsWithinRange(siteId,
+                    LocalDate.ofEpochDay(EpochDays.floor(windowStart)),
+                    LocalDate.ofEpochDay(EpochDays.ceil(windowEnd)))) {
+                takenNights.put(night.getNight(), night.getReservation().getId());
+            }
+            return takenNights;
+        }
+
+        /**
+         * Replaces the nights of the updated and deleted reservations with the ones taken by the batch.
+         */
+        private void writeNights() {
+            if (!releasedIds.isEmpty()) {
+                nightRepository.deleteByReservationIdIn(releasedIds);
+            }
+            nightRepository.saveAll(newNights);
+        }
+
+        private boolean overlaps(final List<DateRange> ranges, final DateRange dates) {
+            for (DateRange range : ranges) {
+                if (range.getStartDate().isBefore(dates.getEndDate()) && range.getEndDate().isAfter(dates.getStartDate())) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
@@ -0,0 +1,126 @@
+package com.pmattioli.campsite.reservations.service.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pmattioli.campsite.reservations.data.repo.ArchivedReservation;
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNightRepository;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+import com.pmattioli.campsite.reservations.service.index.EpochDays;
+
+/**
+ * Moves the reservations that ended more than {@code campsite.reservation.archive.retention-days}
+ * days ago from the live {@code reservation} table to the {@code reservation_archive} table, on the
+ * {@code campsite.reservation.archive.cron} schedule.
+ * <p>
+ * Reservations are moved {@code campsite.reservation.archive.chunk-size} at a time, each chunk in its
+ * own transaction, so a run never holds locks on more rows than that nor builds an unbounded
+ * persistence context. A {@link ReservationEvent} is published for every archived reservation, so
+ * in-memory listings drop it once its chunk commits.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+@ConditionalOnProperty(name = "campsite.reservation.archive.enabled", havingValue = "true")
+public class ReservationArchiver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReservationArchiver.class);
+
+    @Value("${campsite.reservation.archive.retention-days}")
+    private int retentionDays;
+
+    @Value("${campsite.reservation.archive.chunk-size}")
+    private int chunkSize;
+
+    @Autowired
+    private ReservationRepository repository;
+
+    @Autowired
+    private ReservationNightRepository nightRepository;
+
+    @Autowired
+    private CalendarVersions calendarVersions;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public ReservationArchiver(final PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Archives every reservation that ended before the retention period.
+     *
+     * @return the number of archived reservations
+     */
+    @Scheduled(cron = "${campsite.reservation.archive.cron}")
+    public int archive() {
+        Instant cutoff = EpochDays.toInstant(EpochDays.today() - retentionDays);
+
+        int archived = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(status -> archiveChunk(cutoff));
+            archived += moved;
+        } while (moved == chunkSize);
+
+        if (archived > 0) {
+            LOG.info("Archived {} reservations that ended by {}", archived, cutoff);
+        }
+        return archived;
+    }
+
+    private int archiveChunk(final Instant cutoff) {
+        List<Reservation> reservations = repository.findReservationsEndedBy(cutoff, PageRequest.of(0, chunkSize));
+        if (reservations.isEmpty()) {
+            return 0;
+        }
+
+        Instant archivedAt = Instant.now();
+        List<Long> ids = new ArrayList<>(reservations.size());
+        List<DateRange> archivedDates = new ArrayList<>(reservations.size());
+        for (Reservation reservation : reservations) {
+            // Archived rows are always new, so they're persisted without the select a merge would issue
+            entityManager.persist(new ArchivedReservation(reservation, archivedAt));
+            ids.add(reservation.getId());
+            archivedDates.add(new DateRange(reservation.getStartDate(), reservation.getEndDate()));
+        }
+        nightRepository.deleteByReservationIdIn(ids);
+        repository.deleteByIdIn(ids);
+        calendarVersions.bump(archivedDates);
+
+        for (Reservation reservation : reservations) {
+            eventPublisher.publishEvent(ReservationEvent.deleted(reservation));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return reservations.size();
+    }
+
+}
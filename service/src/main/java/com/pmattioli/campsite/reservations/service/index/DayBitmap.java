@@ -0,0 +1,137 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+/**
+ * A ring buffer holding one occupancy bit per epoch day for a sliding window of days starting at
+ * {@link #getBaseDay()}. Each day also keeps a counter of how many ranges cover it, so overlapping
+ * ranges can be added and removed independently. Ranges are half-open ({@code [fromDay, toDay)})
+ * and silently clamped to the window.
+ * <p>
+ * This class is not thread-safe; callers are expected to guard it.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public final class DayBitmap {
+
+    private static final int BITS_PER_WORD = 64;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final long[] words;
+
+    private final int[] counts;
+
+    private long baseDay;
+
+    /**
+     * @param minimumCapacity minimum number of days the window has to hold. The actual capacity is
+     *                        rounded up to a power of two of at least 64 days
+     * @param baseDay first epoch day of the window
+     */
+    public DayBitmap(final int minimumCapacity, final long baseDay) {
+        int size = BITS_PER_WORD;
+        while (size < minimumCapacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.words = new long[size / BITS_PER_WORD];
+        this.counts = new int[size];
+        this.baseDay = baseDay;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getBaseDay() {
+        return baseDay;
+    }
+
+    /**
+     * @return the first epoch day after the end of the window
+     */
+    public long getLimitDay() {
+        return baseDay + capacity;
+    }
+
+    public boolean covers(final long fromDay, final long toDay) {
+        return fromDay >= baseDay && toDay <= getLimitDay();
+    }
+
+    public void add(final long fromDay, final long toDay) {
+        long to = Math.min(toDay, getLimitDay());
+        for (long day = Math.max(fromDay, baseDay); day < to; day++) {
+            int slot = (int) (day & mask);
+            if (counts[slot]++ == 0) {
+                words[slot >>> 6] |= 1L << slot;
+            }
+        }
+    }
+
+    public void remove(final long fromDay, final long toDay) {
+        long to = Math.min(toDay, getLimitDay());
+        for (long day = Math.max(fromDay, baseDay); day < to; day++) {
+            int slot = (int) (day & mask);
+            if (counts[slot] > 0 && --counts[slot] == 0) {
+                words[slot >>> 6] &= ~(1L << slot);
+            }
+        }
+    }
+
+    /**
+     * @return whether any day within {@code [fromDay, toDay)} (clamped to the window) is occupied
+     */
+    public boolean isAnySet(final long fromDay, final long toDay) {
+        long from = Math.max(fromDay, baseDay);
+        long to = Math.min(toDay, getLimitDay());
+        if (from >= to) {
+            return false;
+        }
+        int start = (int) (from & mask);
+        int length = (int) (to - from);
+        if (start + length <= capacity) {
+            return isAnySetInSlots(start, start + length);
+        }
+        return isAnySetInSlots(start, capacity) || isAnySetInSlots(0, start + length - capacity);
+    }
+
+    /**
+     * Slides the window forward so that it starts at the given day, releasing the slots of the days
+     * left behind. Sliding backwards is a no-op.
+     */
+    public void advanceTo(final long newBaseDay) {
+        if (newBaseDay <= baseDay) {
+            return;
+        }
+        long to = Math.min(newBaseDay, getLimitDay());
+        for (long day = baseDay; day < to; day++) {
+            int slot = (int) (day & mask);
+            counts[slot] = 0;
+            words[slot >>> 6] &= ~(1L << slot);
+        }
+        baseDay = newBaseDay;
+    }
+
+    private boolean isAnySetInSlots(final int fromSlot, final int toSlot) {
+        int firstWord = fromSlot >>> 6;
+        int lastWord = (toSlot - 1) >>> 6;
+        long firstMask = -1L << fromSlot;
+        long lastMask = -1L >>> -toSlot;
+        if (firstWord == lastWord) {
+            return (words[firstWord] & firstMask & lastMask) != 0;
+        }
+        if ((words[firstWord] & firstMask) != 0) {
+            return true;
+        }
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            if (words[word] != 0) {
+                return true;
+            }
+        }
+        return (words[lastWord] & lastMask) != 0;
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import java.time.Instant;
+
+/**
+ * Conversions between {@link Instant}s and UTC epoch days, the unit in which the in-memory
+ * indexes keep track of occupied nights.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+public final class EpochDays {
+
+    public static final long SECONDS_PER_DAY = 86_400L;
+
+    private EpochDays() {}
+
+    public static long today() {
+        return floor(Instant.now());
+    }
+
+    /**
+     * @return the epoch day containing the given instant
+     */
+    public static long floor(final Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_DAY);
+    }
+
+    /**
+     * @return the first epoch day starting at or after the given instant
+     */
+    public static long ceil(final Instant instant) {
+        long day = floor(instant);
+        return toInstant(day).equals(instant) ? day : day + 1;
+    }
+
+    /**
+     * @return the nights of a stay between the given instants, as a half-open {@code [from, to)} range of
+     * epoch days: every night from the check-in day up to, but not including, the check-out day, and at
+     * least one. Stays checking out and checking in on the same day don't share a night.
+     */
+    public static long[] nights(final Instant startDate, final Instant endDate) {
+        long fromDay = floor(startDate);
+        return new long[] { fromDay, Math.max(floor(endDate), fromDay + 1) };
+    }
+
+    public static Instant toInstant(final long epochDay) {
+        return Instant.ofEpochSecond(epochDay * SECONDS_PER_DAY);
+    }
+
+}
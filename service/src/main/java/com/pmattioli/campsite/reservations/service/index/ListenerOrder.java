@@ -0,0 +1,17 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+/**
+ * Order in which the in-memory structures apply committed
+ * {@link com.pmattioli.campsite.reservations.service.ReservationEvent}s. The occupancy index goes
+ * first, so it's up to date by the time the nights claimed by a write are released.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+final class ListenerOrder {
+
+    static final int OCCUPANCY_INDEX = 0;
+
+    private ListenerOrder() {}
+
+}
@@ -0,0 +1,130 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Lock-free registry of the nights claimed by in-flight reservations. Every night within the
+ * bookable window of every site owns a slot holding the token of the claim that owns it (or
+ * {@code 0} when unclaimed), and nights are claimed in ascending order through compare-and-set.
+ * Claims on different sites or disjoint nights never contend, while among overlapping claims the
+ * first one to reach a shared night wins and the others release whatever they had acquired and
+ * fail.
+ * <p>
+ * Claims cover every calendar day touched by the requested range, rather than its nights (see
+ * {@link EpochDays#nights(Instant, Instant)}), as the database checks overlaps to the instant unless the
+ * night table is enabled. This errs on the side of rejecting simultaneous bookings sharing a partial day
+ * rather than letting both through.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+public class NightClaims {
+
+    private static final long UNCLAIMED = 0L;
+
+    private final AtomicLong tokens = new AtomicLong();
+
+    private final AtomicLongArray owners;
+
+    private final int siteCount;
+
+    private final int daysPerSite;
+
+    private final int mask;
+
+    @Autowired
+    public NightClaims(@Value("${campsite.reservation.days-ahead.maximum}") final int maximumDaysAhead,
+            @Value("${campsite.reservation.length.maximum}") final int maximumLengthOfStay,
+            @Value("${campsite.reservation.sites.count}") final int siteCount) {
+        this.siteCount = siteCount;
+        this.daysPerSite = Integer.highestOneBit(Math.max(maximumDaysAhead + maximumLengthOfStay + 1, 32)) << 1;
+        this.owners = new AtomicLongArray(siteCount * daysPerSite);
+        this.mask = daysPerSite - 1;
+    }
+
+    /**
+     * Claims all the nights touched by the given range at the given site.
+     *
+     * @return the claim, or {@code null} if any of the nights was already claimed
+     */
+    public Claim tryClaim(final Long siteId, final Instant startDate, final Instant endDate) {
+        Assert.isTrue(siteId != null && siteId >= 1 && siteId <= siteCount, "Unknown site " + siteId);
+        long fromDay = EpochDays.floor(startDate);
+        long toDay = EpochDays.ceil(endDate);
+        Assert.isTrue(toDay - fromDay <= daysPerSite, "Range is too long to be claimed");
+
+        int offset = (int) (siteId - 1) * daysPerSite;
+        long token = tokens.incrementAndGet();
+        for (long day = fromDay; day < toDay; day++) {
+            if (!owners.compareAndSet(slot(offset, day), UNCLAIMED, token)) {
+                release(token, offset, fromDay, day);
+                return null;
+            }
+        }
+        return new Claim(token, offset, fromDay, toDay);
+    }
+
+    private void release(final long token, final int offset, final long fromDay, final long toDay) {
+        for (long day = fromDay; day < toDay; day++) {
+            owners.compareAndSet(slot(offset, day), token, UNCLAIMED);
+        }
+    }
+
+    private int slot(final int offset, final long day) {
+        return offset + (int) (day & mask);
+    }
+
+    /**
+     * Nights owned by a successful {@link #tryClaim(Long, Instant, Instant)} call.
+     */
+    public final class Claim {
+
+        private final long token;
+
+        private final int offset;
+
+        private final long fromDay;
+
+        private final long toDay;
+
+        private Claim(final long token, final int offset, final long fromDay, final long toDay) {
+            this.token = token;
+            this.offset = offset;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        public void release() {
+            NightClaims.this.release(token, offset, fromDay, toDay);
+        }
+
+        /**
+         * Keeps the nights claimed until the current transaction completes, whatever its outcome.
+         *
+         * @throws IllegalStateException if there's no transaction synchronization active
+         */
+        public void releaseOnCompletion() {
+            Assert.state(TransactionSynchronizationManager.isSynchronizationActive(),
+                    "Claimed nights can only be held within a transaction");
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(final int status) {
+                    release();
+                }
+            });
+        }
+
+    }
+
+}
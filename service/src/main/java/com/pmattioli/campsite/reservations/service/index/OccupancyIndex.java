@@ -0,0 +1,293 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.Assert;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+
+/**
+ * In-memory index of the nights occupied by committed reservations, covering the bookable window
+ * ({@code campsite.reservation.days-ahead.maximum} plus {@code campsite.reservation.length.maximum}
+ * days from today). It is rebuilt from the database at startup, or from the {@link ReservationJournal}
+ * when it's enabled, and kept up to date by listening to {@link ReservationEvent}s after their
+ * transaction commits.
+ * <p>
+ * Every site ({@code 1} to {@code campsite.reservation.sites.count}) has its own independent
+ * calendar guarded by its own lock, so writes to different sites never contend.
+ * <p>
+ * Events are applied by reservation version, so one delivered after a newer event for the same
+ * reservation, as happens when concurrent transactions commit, is ignored rather than bringing back
+ * stale nights.
+ * <p>
+ * When enabled through {@code campsite.reservation.occupancy-index.enabled}, availability is checked
+ * against the index alone, without querying the database. That only holds for single instance
+ * deployments: the index doesn't see the writes made by other application instances.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+@ConditionalOnProperty(name = "campsite.reservation.occupancy-index.enabled", havingValue = "true")
+public class OccupancyIndex {
+
+    private final ReservationRepository repository;
+
+    private final int maximumLengthOfStay;
+
+    private final int maximumDaysAhead;
+
+    private final int siteCount;
+
+    @Autowired(required = false)
+    private ReservationJournal journal;
+
+    // What's known of every indexed reservation, including the deleted ones, so late events can't bring them back
+    private final ConcurrentMap<Long, IndexedVersion> versionsById = new ConcurrentHashMap<>();
+
+    private volatile long prunedDay;
+
+    private volatile Partition[] partitions;
+
+    @Autowired
+    public OccupancyIndex(final ReservationRepository repository,
+            @Value("${campsite.reservation.length.maximum}") final int maximumLengthOfStay,
+            @Value("${campsite.reservation.days-ahead.maximum}") final int maximumDaysAhead,
+            @Value("${campsite.reservation.sites.count}") final int siteCount) {
+        this.repository = repository;
+        this.maximumLengthOfStay = maximumLengthOfStay;
+        this.maximumDaysAhead = maximumDaysAhead;
+        this.siteCount = siteCount;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long today = EpochDays.today();
+        Partition[] rebuiltPartitions = new Partition[siteCount];
+        for (int i = 0; i < siteCount; i++) {
+            rebuiltPartitions[i] = new Partition(new DayBitmap(maximumDaysAhead + maximumLengthOfStay + 1, today));
+        }
+
+        Instant startDate = EpochDays.toInstant(today);
+        Instant endDate = EpochDays.toInstant(rebuiltPartitions[0].bitmap.getLimitDay());
+        List<Reservation> reservations = journal == null ? null : journal.getReservations();
+        if (reservations == null) {
+            reservations = repository.findReservationsConflictingWithRange(startDate, endDate);
+            if (journal != null) {
+                journal.snapshot(reservations);
+            }
+        }
+
+        versionsById.clear();
+        for (Reservation reservation : reservations) {
+            // The journal also holds reservations outside of the window
+            if (!reservation.getStartDate().isBefore(endDate) || !reservation.getEndDate().isAfter(startDate)) {
+                continue;
+            }
+            long[] nights = nightsOf(reservation);
+            rebuiltPartitions[indexOf(reservation.getSiteId())].add(reservation.getId(), nights);
+            versionsById.put(reservation.getId(), new IndexedVersion(reservation, nights[1], false));
+        }
+        prunedDay = today;
+        partitions = rebuiltPartitions;
+    }
+
+    @Order(ListenerOrder.OCCUPANCY_INDEX)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationEvent(final ReservationEvent event) {
+        Reservation reservation = event.getReservation();
+        if (reservation.getId() == null) {
+            return;
+        }
+        pruneFinished();
+
+        boolean removed = event.getType() == ReservationEvent.Type.DELETED;
+        long[] nights = nightsOf(reservation);
+        IndexedVersion version = new IndexedVersion(reservation, nights[1], removed);
+        versionsById.compute(reservation.getId(), (id, current) -> {
+            if (current != null && !version.isNewerThan(current)) {
+                return current;
+            }
+            if (current != null && !current.removed) {
+                partitions[indexOf(current.siteId)].remove(id);
+            }
+            if (!removed) {
+                partitions[indexOf(reservation.getSiteId())].add(id, nights);
+            }
+            return version;
+        });
+    }
+
+    /**
+     * Tells whether a committed reservation at the given site takes any of the nights the given time
+     * range would take.
+     */
+    public boolean isOccupied(final Long siteId, final Instant startDate, final Instant endDate) {
+        long[] nights = EpochDays.nights(startDate, endDate);
+        return partitions[indexOf(siteId)].isOccupied(nights[0], nights[1], EpochDays.today());
+    }
+
+    /**
+     * Looks up all the site calendars in parallel for the sites none of whose nights within the given
+     * time range is taken (see {@link #isOccupied(Long, Instant, Instant)}).
+     *
+     * @return the site ids, in ascending order
+     */
+    public List<Long> findAvailableSites(final Instant startDate, final Instant endDate) {
+        return LongStream.rangeClosed(1, siteCount)
+                .parallel()
+                .filter(siteId -> !isOccupied(siteId, startDate, endDate))
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Forgets the versions of the reservations that have ended, once a day.
+     */
+    private void pruneFinished() {
+        long today = EpochDays.today();
+        if (prunedDay < today) {
+            prunedDay = today;
+            versionsById.values().removeIf(version -> version.toDay <= today);
+        }
+    }
+
+    private int indexOf(final Long siteId) {
+        Assert.isTrue(siteId != null && siteId >= 1 && siteId <= siteCount, "Unknown site " + siteId);
+        return (int) (siteId - 1);
+    }
+
+    private static long[] nightsOf(final Reservation reservation) {
+        return EpochDays.nights(reservation.getStartDate(), reservation.getEndDate());
+    }
+
+    /**
+     * The calendar of a single site.
+     */
+    private static final class Partition {
+
+        private final StampedLock lock = new StampedLock();
+
+        private final Map<Long, long[]> nightsByReservationId = new HashMap<>();
+
+        private final DayBitmap bitmap;
+
+        private Partition(final DayBitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        private boolean isOccupied(final long fromDay, final long toDay, final long today) {
+            slideWindow(today);
+
+            long stamp = lock.tryOptimisticRead();
+            boolean occupied = bitmap.isAnySet(fromDay, toDay);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    occupied = bitmap.isAnySet(fromDay, toDay);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return occupied;
+        }
+
+        private void add(final Long reservationId, final long[] nights) {
+            long stamp = lock.writeLock();
+            try {
+                nightsByReservationId.put(reservationId, nights);
+                bitmap.add(nights[0], nights[1]);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void remove(final Long reservationId) {
+            long stamp = lock.writeLock();
+            try {
+                long[] nights = nightsByReservationId.remove(reservationId);
+                if (nights != null) {
+                    bitmap.remove(nights[0], nights[1]);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void slideWindow(final long today) {
+            long stamp = lock.tryOptimisticRead();
+            long baseDay = bitmap.getBaseDay();
+            if (lock.validate(stamp) && baseDay >= today) {
+                return;
+            }
+
+            stamp = lock.writeLock();
+            try {
+                if (bitmap.getBaseDay() >= today) {
+                    return;
+                }
+                long previousLimitDay = bitmap.getLimitDay();
+                bitmap.advanceTo(today);
+                // Reservations that have ended only had days that just left the window
+                nightsByReservationId.values().removeIf(nights -> nights[1] <= today);
+                // Days entering the window might be covered by reservations that were clamped so far
+                for (long[] nights : nightsByReservationId.values()) {
+                    if (nights[1] > previousLimitDay) {
+                        bitmap.add(Math.max(nights[0], previousLimitDay), nights[1]);
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+    }
+
+    /**
+     * The version of an indexed reservation, or the one it was deleted with.
+     */
+    private static final class IndexedVersion {
+
+        private final Long siteId;
+
+        private final long version;
+
+        private final long toDay;
+
+        private final boolean removed;
+
+        private IndexedVersion(final Reservation reservation, final long toDay, final boolean removed) {
+            this.siteId = reservation.getSiteId();
+            this.version = reservation.getVersion() == null ? 0L : reservation.getVersion();
+            this.toDay = toDay;
+            this.removed = removed;
+        }
+
+        /**
+         * A reservation is deleted with the version it was read at, so an update to that version is older.
+         */
+        private boolean isNewerThan(final IndexedVersion other) {
+            return version > other.version || version == other.version && removed && !other.removed;
+        }
+
+    }
+
+}
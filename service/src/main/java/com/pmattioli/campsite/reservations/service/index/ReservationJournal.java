@@ -0,0 +1,360 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+
+/**
+ * Append-only journal of the committed {@link ReservationEvent}s, letting the {@link OccupancyIndex}
+ * be recovered at startup without querying the database.
+ * <p>
+ * Events are appended as fixed size binary records to a {@code campsite.reservation.journal.capacity}
+ * bytes file, written through a memory-mapped {@link FileChannel}, under the
+ * {@code campsite.reservation.journal.directory} directory. Every
+ * {@code campsite.reservation.journal.snapshot-interval} records, or whenever the journal is full, the
+ * reservations that haven't ended yet are written to a snapshot file and the journal starts over.
+ * Opening the journal loads the last snapshot and replays the records appended after it.
+ * <p>
+ * Events are applied by reservation version, so one delivered after a newer event for the same
+ * reservation, as happens when concurrent transactions commit, is ignored rather than bringing back
+ * stale dates.
+ * <p>
+ * Records survive crashes of the application, but not of the operating system. Like the index itself,
+ * the journal only sees the writes made by this application instance, so it's only created along with
+ * the index, which is only enabled in single instance deployments.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+@ConditionalOnExpression("${campsite.reservation.journal.enabled:false}"
+        + " and ${campsite.reservation.occupancy-index.enabled:false}")
+public class ReservationJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReservationJournal.class);
+
+    static final String JOURNAL_FILE = "reservations.journal";
+
+    static final String SNAPSHOT_FILE = "reservations.snapshot";
+
+    private static final int MAGIC = 0x43524a31;
+
+    // Magic number and generation, which ties a journal to the snapshot it follows
+    private static final int HEADER_SIZE = 4 + 8;
+
+    private static final byte END = 0;
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    // Id, version, site id, then seconds and nanoseconds of the start and end dates
+    private static final int ENTRY_SIZE = 8 + 8 + 8 + 8 + 4 + 8 + 4;
+
+    static final int RECORD_SIZE = 1 + ENTRY_SIZE;
+
+    private final Path journalPath;
+
+    private final Path snapshotPath;
+
+    private final int capacity;
+
+    private final int snapshotInterval;
+
+    private final Map<Long, Reservation> reservationsById = new HashMap<>();
+
+    // Versions of the reservations removed since the last snapshot, so late events can't bring them back
+    private final Map<Long, Long> removedVersionsById = new HashMap<>();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private long generation;
+
+    private int position;
+
+    private int recordsSinceSnapshot;
+
+    private boolean recovered;
+
+    @Autowired
+    public ReservationJournal(@Value("${campsite.reservation.journal.directory}") final String directory,
+            @Value("${campsite.reservation.journal.capacity}") final int capacity,
+            @Value("${campsite.reservation.journal.snapshot-interval}") final int snapshotInterval) {
+        this.journalPath = Paths.get(directory, JOURNAL_FILE);
+        this.snapshotPath = Paths.get(directory, SNAPSHOT_FILE);
+        this.capacity = capacity;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        long startedAt = System.nanoTime();
+        Files.createDirectories(journalPath.getParent());
+
+        long snapshotGeneration = readSnapshot();
+        int snapshotSize = reservationsById.size();
+
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        int replayed = 0;
+        if (snapshotGeneration >= 0 && buffer.getInt(0) == MAGIC && buffer.getLong(4) == snapshotGeneration) {
+            generation = snapshotGeneration;
+            replayed = replay();
+            recovered = true;
+        } else {
+            // Without a snapshot the journal can't be trusted, and one older than the snapshot was
+            // left over by a crash before it could be started over
+            reservationsById.clear();
+            generation = Math.max(snapshotGeneration, 0);
+            startOver();
+        }
+
+        LOG.info("Recovered {} reservations from the snapshot and {} journal records in {} ms", snapshotSize,
+                replayed, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * @return detached copies of the reservations known to the journal, or {@code null} if it has no
+     * snapshot to start from, in which case {@link #snapshot(Collection)} has to be called with the
+     * reservations loaded from the database
+     */
+    public synchronized List<Reservation> getReservations() {
+        if (!recovered) {
+            return null;
+        }
+        List<Reservation> reservations = new ArrayList<>(reservationsById.size());
+        for (Reservation reservation : reservationsById.values()) {
+            reservations.add(copyOf(reservation));
+        }
+        return reservations;
+    }
+
+    /**
+     * Replaces the reservations known to the journal with the given ones, and writes a snapshot of them.
+     */
+    public synchronized void snapshot(final Collection<Reservation> reservations) {
+        reservationsById.clear();
+        for (Reservation reservation : reservations) {
+            reservationsById.put(reservation.getId(), copyOf(reservation));
+        }
+        writeSnapshot();
+        recovered = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onReservationEvent(final ReservationEvent event) {
+        Reservation reservation = event.getReservation();
+        if (reservation.getId() == null) {
+            return;
+        }
+        byte type = event.getType() == ReservationEvent.Type.DELETED ? REMOVE : PUT;
+        if (!apply(type, copyOf(reservation))) {
+            return;
+        }
+
+        if (position + RECORD_SIZE + 1 > capacity || recordsSinceSnapshot >= snapshotInterval) {
+            // The snapshot already holds this event
+            writeSnapshot();
+            return;
+        }
+        // The record is terminated before its type is written, so a half-written record is never replayed
+        buffer.put(position + RECORD_SIZE, END);
+        putEntry(buffer, position + 1, reservation);
+        buffer.put(position, type);
+        position += RECORD_SIZE;
+        recordsSinceSnapshot++;
+    }
+
+    /**
+     * @return whether the record was applied, or ignored as older than what's known of the reservation
+     */
+    private boolean apply(final byte type, final Reservation reservation) {
+        long version = versionOf(reservation);
+        Long removedVersion = removedVersionsById.get(reservation.getId());
+        Reservation current = reservationsById.get(reservation.getId());
+        // A reservation is deleted with the version it was read at, so an update to that version is older
+        if (removedVersion != null && removedVersion >= version
+                || current != null && versionOf(current) > version) {
+            return false;
+        }
+        if (type == REMOVE) {
+            reservationsById.remove(reservation.getId());
+            removedVersionsById.put(reservation.getId(), version);
+        } else {
+            reservationsById.put(reservation.getId(), reservation);
+        }
+        return true;
+    }
+
+    private static long versionOf(final Reservation reservation) {
+        return reservation.getVersion() == null ? 0L : reservation.getVersion();
+    }
+
+    private int replay() {
+        int replayed = 0;
+        position = HEADER_SIZE;
+        while (position + RECORD_SIZE < capacity) {
+            byte type = buffer.get(position);
+            if (type != PUT && type != REMOVE) {
+                break;
+            }
+            apply(type, getEntry(buffer, position + 1));
+            position += RECORD_SIZE;
+            replayed++;
+        }
+        recordsSinceSnapshot = replayed;
+        return replayed;
+    }
+
+    private void startOver() {
+        removedVersionsById.clear();
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(4, generation);
+        buffer.put(HEADER_SIZE, END);
+        position = HEADER_SIZE;
+        recordsSinceSnapshot = 0;
+    }
+
+    /**
+     * Writes the reservations that haven't ended yet to a new snapshot, replacing the previous one
+     * atomically, and starts the journal over.
+     *
+     * @throws UncheckedIOException if neither the snapshot can be written nor the previous one deleted
+     */
+    private void writeSnapshot() {
+        Instant today = EpochDays.toInstant(EpochDays.today());
+        for (Iterator<Reservation> it = reservationsById.values().iterator(); it.hasNext(); ) {
+            if (!it.next().getEndDate().isAfter(today)) {
+                it.remove();
+            }
+        }
+
+        ByteBuffer snapshot = ByteBuffer.allocate(HEADER_SIZE + 4 + reservationsById.size() * ENTRY_SIZE);
+        snapshot.putInt(0, MAGIC);
+        snapshot.putLong(4, generation + 1);
+        snapshot.putInt(HEADER_SIZE, reservationsById.size());
+        int index = HEADER_SIZE + 4;
+        for (Reservation reservation : reservationsById.values()) {
+            putEntry(snapshot, index, reservation);
+            index += ENTRY_SIZE;
+        }
+
+        Path temporaryPath = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try {
+            try (FileChannel snapshotChannel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (snapshot.hasRemaining()) {
+                    snapshotChannel.write(snapshot);
+                }
+                snapshotChannel.force(true);
+            }
+            Files.move(temporaryPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            // Without its snapshot the journal is ignored on the next startup, and the index is rebuilt
+            // from the database instead
+            LOG.error("Couldn't write snapshot {}, discarding the journal", snapshotPath, ex);
+            try {
+                Files.deleteIfExists(snapshotPath);
+            } catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        generation++;
+        startOver();
+    }
+
+    /**
+     * Loads the snapshot, if any.
+     *
+     * @return the generation of the snapshot, or {@code -1} if there's none
+     */
+    private long readSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return -1;
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        if (snapshot.capacity() < HEADER_SIZE + 4 || snapshot.getInt(0) != MAGIC) {
+            LOG.warn("Ignoring unreadable snapshot {}", snapshotPath);
+            return -1;
+        }
+        int size = snapshot.getInt(HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            Reservation reservation = getEntry(snapshot, HEADER_SIZE + 4 + i * ENTRY_SIZE);
+            reservationsById.put(reservation.getId(), reservation);
+        }
+        return snapshot.getLong(4);
+    }
+
+    private static void putEntry(final ByteBuffer target, final int index, final Reservation reservation) {
+        target.putLong(index, reservation.getId());
+        target.putLong(index + 8, versionOf(reservation));
+        target.putLong(index + 16, reservation.getSiteId());
+        target.putLong(index + 24, reservation.getStartDate().getEpochSecond());
+        target.putInt(index + 32, reservation.getStartDate().getNano());
+        target.putLong(index + 36, reservation.getEndDate().getEpochSecond());
+        target.putInt(index + 44, reservation.getEndDate().getNano());
+    }
+
+    private static Reservation getEntry(final ByteBuffer source, final int index) {
+        Reservation reservation = new Reservation(
+                Instant.ofEpochSecond(source.getLong(index + 24), source.getInt(index + 32)),
+                Instant.ofEpochSecond(source.getLong(index + 36), source.getInt(index + 44)), null);
+        reservation.setId(source.getLong(index));
+        reservation.setVersion(source.getLong(index + 8));
+        reservation.setSiteId(source.getLong(index + 16));
+        return reservation;
+    }
+
+    /**
+     * @return a copy of the reservation without its user, which the journal doesn't keep
+     */
+    private static Reservation copyOf(final Reservation reservation) {
+        Reservation copy = new Reservation(reservation.getStartDate(), reservation.getEndDate(), null);
+        copy.setId(reservation.getId());
+        copy.setVersion(reservation.getVersion());
+        copy.setSiteId(reservation.getSiteId());
+        return copy;
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+
+/**
+ * Bounded, read-through cache of reservation listings. Entries are keyed by day-aligned ranges (the
+ * calendar days touched by the requested range), so requests for the same days share an entry no
+ * matter the time of day they start at.
+ * <p>
+ * Every entry keeps the calendar version it was loaded for (see
+ * {@link com.pmattioli.campsite.reservations.service.ReservationsService#getCalendarVersion(Instant, Integer)}),
+ * and is only served for that same version, which the caller reads before calling
+ * {@link #get(Instant, Instant, long, BiFunction)}. As every write changes the version of the days it
+ * touches, including writes made by other instances, the cache never hides them. Listings are loaded
+ * after the version is read, so an entry is never older than its version.
+ * <p>
+ * Entries are evicted in least recently used order once {@code campsite.reservation.list.cache.maximum-size}
+ * is reached, and expire {@code campsite.reservation.list.cache.time-to-live-seconds} after being loaded.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+public class ReservationListingCache {
+
+    private final int maximumSize;
+
+    private final long timeToLiveNanos;
+
+    private final Map<DayRange, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    @Autowired
+    public ReservationListingCache(@Value("${campsite.reservation.list.cache.maximum-size}") final int maximumSize,
+            @Value("${campsite.reservation.list.cache.time-to-live-seconds}") final long timeToLiveSeconds) {
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+        this.entries = new LinkedHashMap<DayRange, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<DayRange, Entry> eldest) {
+                return size() > ReservationListingCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Lists the reservations overlapping the given time range, loading the listing for all the days it
+     * touches through the given loader if it isn't cached for the given calendar version.
+     *
+     * @param calendarVersion the current calendar version of the time range, read before calling this method
+     * @param loader lists the committed reservations overlapping a time range
+     * @return detached copies of the overlapping reservations, sorted by start date
+     */
+    public List<Reservation> get(final Instant startDate, final Instant endDate, final long calendarVersion,
+            final BiFunction<Instant, Instant, List<Reservation>> loader) {
+        DayRange key = new DayRange(EpochDays.floor(startDate), EpochDays.ceil(endDate));
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null && entry.calendarVersion == calendarVersion
+                && System.nanoTime() - entry.loadedAt < timeToLiveNanos) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            List<Reservation> reservations = new ArrayList<>();
+            for (Reservation reservation : loader.apply(EpochDays.toInstant(key.fromDay),
+                    EpochDays.toInstant(key.toDay))) {
+                reservations.add(Reservations.copyOf(reservation));
+            }
+            reservations.sort((r1, r2) -> r1.getStartDate().compareTo(r2.getStartDate()));
+            entry = new Entry(reservations, calendarVersion, System.nanoTime());
+
+            synchronized (entries) {
+                // A request that read an older version might finish loading last
+                entries.merge(key, entry, (cached, loaded) ->
+                        cached.calendarVersion > loaded.calendarVersion ? cached : loaded);
+            }
+        }
+
+        List<Reservation> reservations = new ArrayList<>();
+        for (Reservation reservation : entry.reservations) {
+            if (reservation.getStartDate().isBefore(endDate) && reservation.getEndDate().isAfter(startDate)) {
+                reservations.add(Reservations.copyOf(reservation));
+            }
+        }
+        return reservations;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class DayRange {
+
+        private final long fromDay;
+
+        private final long toDay;
+
+        private DayRange(final long fromDay, final long toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof DayRange))
+                return false;
+            DayRange that = (DayRange) o;
+            return fromDay == that.fromDay && toDay == that.toDay;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(fromDay) + Long.hashCode(toDay);
+        }
+    }
+
+    private static final class Entry {
+
+        private final List<Reservation> reservations;
+
+        private final long calendarVersion;
+
+        private final long loadedAt;
+
+        private Entry(final List<Reservation> reservations, final long calendarVersion, final long loadedAt) {
+            this.reservations = reservations;
+            this.calendarVersion = calendarVersion;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+}
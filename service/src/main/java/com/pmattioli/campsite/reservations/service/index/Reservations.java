@@ -0,0 +1,38 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.User;
+
+/**
+ * Detached copies of reservations, so the in-memory structures never share state with their
+ * callers.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+final class Reservations {
+
+    private Reservations() {}
+
+    static Reservation copyOf(final Reservation reservation) {
+        Reservation copy = new Reservation(reservation.getStartDate(), reservation.getEndDate(),
+                copyOf(reservation.getUser()));
+        copy.setId(reservation.getId());
+        copy.setVersion(reservation.getVersion());
+        copy.setSiteId(reservation.getSiteId());
+        return copy;
+    }
+
+    static User copyOf(final User user) {
+        if (user == null) {
+            return null;
+        }
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setFirstName(user.getFirstName());
+        copy.setLastName(user.getLastName());
+        copy.setEmail(user.getEmail());
+        return copy;
+    }
+
+}
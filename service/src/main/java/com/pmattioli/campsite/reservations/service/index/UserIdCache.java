@@ -0,0 +1,101 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.pmattioli.campsite.reservations.data.repo.User;
+
+/**
+ * Bounded map from user emails to the ids and names of the stored users, so repeat guests are
+ * resolved without querying the user table. Entries are evicted in least recently used order once
+ * {@code campsite.reservation.user-cache.maximum-size} is reached.
+ * <p>
+ * Users are never deleted, so cached ids stay valid for good. Guests giving other names than the
+ * cached ones miss the cache, so their stored user is loaded and has its names updated. Users stored
+ * or found within a transaction are only cached once it commits, so a rolled back user is never
+ * handed out.
+ *
+ * @author Pablo Mattioli
+ * @since 0.1.0
+ */
+@Component
+public class UserIdCache {
+
+    private final Map<String, CachedUser> users;
+
+    @Autowired
+    public UserIdCache(@Value("${campsite.reservation.user-cache.maximum-size}") final int maximumSize) {
+        this.users = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedUser> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @return the id of the stored user with the email of the given one, or {@code null} if it isn't
+     *         cached or the cached names don't match the given ones
+     */
+    public Long get(final User userData) {
+        CachedUser user;
+        synchronized (users) {
+            user = users.get(userData.getEmail());
+        }
+        if (user == null || !Objects.equals(user.firstName, userData.getFirstName())
+                || !Objects.equals(user.lastName, userData.getLastName())) {
+            return null;
+        }
+        return user.id;
+    }
+
+    public void put(final User user) {
+        CachedUser cachedUser = new CachedUser(user);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doPut(user.getEmail(), cachedUser);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                doPut(user.getEmail(), cachedUser);
+            }
+        });
+    }
+
+    public int getSize() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    private void doPut(final String email, final CachedUser user) {
+        synchronized (users) {
+            users.put(email, user);
+        }
+    }
+
+    private static final class CachedUser {
+
+        private final Long id;
+
+        private final String firstName;
+
+        private final String lastName;
+
+        private CachedUser(final User user) {
+            this.id = user.getId();
+            this.firstName = user.getFirstName();
+            this.lastName = user.getLastName();
+        }
+
+    }
+
+}
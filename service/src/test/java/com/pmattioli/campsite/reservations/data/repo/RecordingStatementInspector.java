@@ -0,0 +1,22 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Keeps the last SQL statement prepared by Hibernate, so tests can inspect how it gets executed.
+ */
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static volatile String lastSql;
+
+    @Override
+    public String inspect(final String sql) {
+        lastSql = sql;
+        return sql;
+    }
+
+    public static String getLastSql() {
+        return lastSql;
+    }
+
+}
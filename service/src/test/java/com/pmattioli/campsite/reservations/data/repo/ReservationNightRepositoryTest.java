@@ -0,0 +1,106 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class ReservationNightRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testNightsOfBackToBackReservationsAreSaved() {
+
+        Reservation first = createReservation(Instant.parse("2018-05-12T00:00:00Z"),
+                Instant.parse("2018-05-14T00:00:00Z"));
+        Reservation second = createReservation(Instant.parse("2018-05-14T00:00:00Z"),
+                Instant.parse("2018-05-15T00:00:00Z"));
+
+        reservationNightRepository.saveAll(Arrays.asList(
+                new ReservationNight(LocalDate.parse("2018-05-12"), first),
+                new ReservationNight(LocalDate.parse("2018-05-13"), first),
+                new ReservationNight(LocalDate.parse("2018-05-14"), second)));
+        reservationNightRepository.flush();
+
+        assertEquals("Wrong number of nights", 3L, reservationNightRepository.count());
+
+    }
+
+    @Test
+    public void testNightAlreadyTakenIsRejected() {
+
+        Reservation first = createReservation(Instant.parse("2018-05-12T00:00:00Z"),
+                Instant.parse("2018-05-14T00:00:00Z"));
+        Reservation second = createReservation(Instant.parse("2018-05-13T00:00:00Z"),
+                Instant.parse("2018-05-14T00:00:00Z"));
+
+        reservationNightRepository.saveAll(Arrays.asList(
+                new ReservationNight(LocalDate.parse("2018-05-12"), first),
+                new ReservationNight(LocalDate.parse("2018-05-13"), first)));
+        reservationNightRepository.flush();
+
+        thrown.expect(DataIntegrityViolationException.class);
+
+        reservationNightRepository.save(new ReservationNight(LocalDate.parse("2018-05-13"), second));
+        reservationNightRepository.flush();
+
+    }
+
+    @Test
+    public void testDeleteByReservationIdReleasesNights() {
+
+        Reservation first = createReservation(Instant.parse("2018-05-12T00:00:00Z"),
+                Instant.parse("2018-05-14T00:00:00Z"));
+        Reservation second = createReservation(Instant.parse("2018-05-12T00:00:00Z"),
+                Instant.parse("2018-05-13T00:00:00Z"));
+
+        reservationNightRepository.saveAll(Arrays.asList(
+                new ReservationNight(LocalDate.parse("2018-05-12"), first),
+                new ReservationNight(LocalDate.parse("2018-05-13"), first)));
+        reservationNightRepository.flush();
+
+        reservationNightRepository.deleteByReservationId(first.getId());
+
+        reservationNightRepository.save(new ReservationNight(LocalDate.parse("2018-05-12"), second));
+        reservationNightRepository.flush();
+
+        assertEquals("Wrong number of nights", 1L, reservationNightRepository.count());
+
+    }
+
+    private Reservation createReservation(Instant startDate, Instant endDate) {
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate);
+        return entityManager.persist(reservation);
+    }
+
+    @SpringBootApplication
+    @EnableJpaRepositories
+    static class TestConfiguration {
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.pmattioli.campsite.reservations.data.repo.RecordingStatementInspector")
+public class ReservationRepositoryQueryPlanTest {
+
+    private static final Timestamp START_DATE = Timestamp.from(Instant.parse("2018-05-12T00:00:00Z"));
+    private static final Timestamp END_DATE = Timestamp.from(Instant.parse("2018-05-17T00:00:00Z"));
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        // Plans are checked against a populated table rather than an empty one
+        for (long siteId = 1; siteId <= 10; siteId++) {
+            for (int week = 0; week < 10; week++) {
+                Instant startDate = START_DATE.toInstant().plus(7 * week, ChronoUnit.DAYS);
+                Reservation reservation = new Reservation(startDate, startDate.plus(3, ChronoUnit.DAYS), null);
+                reservation.setSiteId(siteId);
+                entityManager.persist(reservation);
+            }
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    public void testConflictProbeUsesSiteIndexAndLimit() {
+
+        reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE.toInstant(),
+                END_DATE.toInstant());
+
+        String plan = explain(RecordingStatementInspector.getLastSql(), 1L, END_DATE, START_DATE, 1);
+
+        assertTrue("Conflict probe should use the site index: " + plan,
+                plan.contains("IDX_RESERVATION_SITE_ID_START_DATE_END_DATE"));
+        assertTrue("Conflict probe should fetch a single row: " + plan, plan.contains("LIMIT"));
+
+    }
+
+    @Test
+    public void testConflictListingUsesDateIndex() {
+
+        reservationRepository.findReservationsConflictingWithRange(START_DATE.toInstant(), END_DATE.toInstant());
+
+        String plan = explain(RecordingStatementInspector.getLastSql(), END_DATE, START_DATE);
+
+        assertTrue("Conflict listing should use the date index: " + plan,
+                plan.contains("IDX_RESERVATION_START_DATE_END_DATE"));
+
+    }
+
+    private String explain(final String sql, final Object... parameters) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters).toUpperCase();
+    }
+
+    @SpringBootApplication
+    @EnableJpaRepositories
+    static class TestConfiguration {
+    }
+
+}
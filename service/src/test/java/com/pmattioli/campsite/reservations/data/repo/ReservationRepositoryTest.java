@@ -1,13 +1,20 @@
 package com.pmattioli.campsite.reservations.data.repo;
 
+import static org.junit.Assert.assertFalse;
 import static org.springframework.test.util.AssertionErrors.assertEquals;
 import static org.springframework.test.util.AssertionErrors.assertNotEquals;
 import static org.springframework.test.util.AssertionErrors.assertTrue;
 
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -16,14 +23,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
 
 @RunWith(SpringRunner.class)
 @DataJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class ReservationRepositoryTest {
 
     @Autowired
@@ -113,6 +123,122 @@ public class ReservationRepositoryTest {
 
     }
 
+    @Test
+    public void testFindOccupiedRangesWithinRangeReturnsSortedDatesOfOverlappingReservations(){
+
+        // given
+        createReservation(Instant.parse("2018-05-16T00:00:00Z"), Instant.parse("2018-05-18T00:00:00Z"));
+        createReservation(Instant.parse("2018-05-10T00:00:00Z"), Instant.parse("2018-05-13T00:00:00Z"));
+        createReservation(Instant.parse("2018-05-18T00:00:00Z"), Instant.parse("2018-05-20T00:00:00Z"));
+
+        List<DateRange> occupiedRanges = reservationRepository.findOccupiedRangesWithinRange(1L,
+                Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-18T00:00:00Z"));
+
+        assertEquals("Wrong occupied ranges", Arrays.asList(
+                new DateRange(Instant.parse("2018-05-10T00:00:00Z"), Instant.parse("2018-05-13T00:00:00Z")),
+                new DateRange(Instant.parse("2018-05-16T00:00:00Z"), Instant.parse("2018-05-18T00:00:00Z"))),
+                occupiedRanges);
+
+    }
+
+    @Test
+    public void testStreamReservationsConflictingWithRangeReturnsSortedOverlappingReservations(){
+
+        // given
+        User user = createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+        Reservation second = createReservation(Instant.parse("2018-05-16T00:00:00Z"),
+                Instant.parse("2018-05-18T00:00:00Z"), user);
+        Reservation first = createReservation(Instant.parse("2018-05-10T00:00:00Z"),
+                Instant.parse("2018-05-13T00:00:00Z"));
+        createReservation(Instant.parse("2018-05-18T00:00:00Z"), Instant.parse("2018-05-20T00:00:00Z"));
+
+        List<Reservation> streamedReservations;
+        try (Stream<Reservation> reservations = reservationRepository.streamReservationsConflictingWithRange(
+                Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-18T00:00:00Z"))) {
+            streamedReservations = reservations.collect(Collectors.toList());
+        }
+
+        assertEquals("Wrong streamed reservations", Arrays.asList(first, second), streamedReservations);
+
+    }
+
+    @Test
+    public void testDetachingReservationDetachesItsUser(){
+
+        User user = createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+        Reservation reservation = createReservation(Instant.parse("2018-05-16T00:00:00Z"),
+                Instant.parse("2018-05-18T00:00:00Z"), user);
+
+        entityManager.detach(reservation);
+
+        assertFalse("User should be detached along with its reservation",
+                entityManager.getEntityManager().contains(user));
+
+    }
+
+    @Test
+    public void testFindReservationPagesSeekPastPreviousPage(){
+
+        // given
+        Reservation third = createReservation(Instant.parse("2018-05-14T00:00:00Z"), Instant.parse("2018-05-15T00:00:00Z"));
+        Reservation first = createReservation(Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-13T00:00:00Z"));
+        Reservation second = createReservation(Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-14T00:00:00Z"));
+        createReservation(Instant.parse("2018-05-18T00:00:00Z"), Instant.parse("2018-05-20T00:00:00Z"));
+
+        List<Reservation> firstPage = reservationRepository.findReservationPageConflictingWithRange(
+                Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-18T00:00:00Z"), PageRequest.of(0, 2));
+        List<Reservation> secondPage = reservationRepository.findReservationPageConflictingWithRangeAfter(
+                Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-18T00:00:00Z"),
+                second.getStartDate(), second.getId(), PageRequest.of(0, 2));
+
+        assertEquals("Wrong first page", Arrays.asList(first, second), firstPage);
+        assertEquals("Wrong second page", Collections.singletonList(third), secondPage);
+
+    }
+
+    @Test
+    public void testFindOccupiedSitesWithinRangeOnlyReturnsSitesWithOverlappingReservations(){
+
+        // given
+        createReservation(Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-14T00:00:00Z"), 1L);
+        createReservation(Instant.parse("2018-05-13T00:00:00Z"), Instant.parse("2018-05-15T00:00:00Z"), 1L);
+        createReservation(Instant.parse("2018-05-10T00:00:00Z"), Instant.parse("2018-05-12T00:00:00Z"), 2L);
+        createReservation(Instant.parse("2018-05-13T00:00:00Z"), Instant.parse("2018-05-14T00:00:00Z"), 3L);
+
+        List<Long> occupiedSiteIds = reservationRepository.findOccupiedSitesWithinRange(Arrays.asList(1L, 2L),
+                Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-17T00:00:00Z"));
+
+        assertEquals("Wrong occupied sites", Collections.singletonList(1L), occupiedSiteIds);
+
+    }
+
+    @Test
+    public void testExistsSiteReservationConflictingWithRangeIgnoresOtherSites(){
+
+        // given
+        createReservation(Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-17T00:00:00Z"), 2L);
+
+        assertTrue("There should be no reservation at the site", !reservationRepository
+                .existsSiteReservationConflictingWithRange(1L, Instant.parse("2018-05-12T00:00:00Z"),
+                        Instant.parse("2018-05-17T00:00:00Z")));
+        assertTrue("There should be a reservation at the site", reservationRepository
+                .existsSiteReservationConflictingWithRange(2L, Instant.parse("2018-05-16T00:00:00Z"),
+                        Instant.parse("2018-05-18T00:00:00Z")));
+
+    }
+
+    @Test
+    public void testExistsSiteReservationConflictingWithRangeForBackToBackRange(){
+
+        // given
+        createReservation(Instant.parse("2018-05-18T00:00:00Z"), Instant.parse("2018-05-20T00:00:00Z"));
+
+        assertTrue("There should be no reservation between specified dates", !reservationRepository
+                .existsSiteReservationConflictingWithRange(1L, Instant.parse("2018-05-20T00:00:00Z"),
+                        Instant.parse("2018-05-22T00:00:00Z")));
+
+    }
+
     @Test
     public void testCreateReservationSuccesfullyReturnsBookingID() {
 
@@ -239,6 +365,79 @@ public class ReservationRepositoryTest {
 
     }
 
+    @Test
+    public void testReservationIdsAreAllocatedInBlocks() {
+
+        Reservation first = createReservation(Instant.parse("2018-05-12T00:00:00Z"),
+                Instant.parse("2018-05-13T00:00:00Z"));
+        Reservation second = createReservation(Instant.parse("2018-05-13T00:00:00Z"),
+                Instant.parse("2018-05-14T00:00:00Z"));
+        Reservation third = createReservation(Instant.parse("2018-05-14T00:00:00Z"),
+                Instant.parse("2018-05-15T00:00:00Z"));
+
+        assertEquals("Ids should be consecutive", first.getId() + 1, second.getId());
+        assertEquals("Ids should be consecutive", second.getId() + 1, third.getId());
+
+        // The sequence only moves a whole block at a time, and is past every id handed out
+        long nextBlock = ((Number) entityManager.getEntityManager()
+                .createNativeQuery("SELECT NEXT VALUE FOR reservation_id_seq").getSingleResult()).longValue();
+        assertEquals("Sequence should move in blocks", 1L, nextBlock % PooledSequenceGenerator.DEFAULT_BLOCK_SIZE);
+        assertTrue("Sequence should be past the allocated ids", nextBlock > third.getId());
+
+    }
+
+    @Test
+    public void testListingReadsReservationsAndUsersInOneStatement() {
+
+        createReservation(Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-13T00:00:00Z"),
+                createUser("Florencia", "Prieto", "florencia.prieto@disney.com"));
+        for (int i = 0; i < 5; i++) {
+            createReservation(Instant.parse("2018-06-12T00:00:00Z"), Instant.parse("2018-06-13T00:00:00Z"),
+                    createUser("Guest", String.valueOf(i), "guest" + i + "@disney.com"));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        List<Reservation> single = reservationRepository.listReservationsConflictingWithRange(
+                Instant.parse("2018-05-12T00:00:00Z"), Instant.parse("2018-05-13T00:00:00Z"));
+        long singleStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        List<Reservation> several = reservationRepository.listReservationsConflictingWithRange(
+                Instant.parse("2018-06-12T00:00:00Z"), Instant.parse("2018-06-13T00:00:00Z"));
+        long severalStatements = statistics.getPrepareStatementCount();
+
+        assertEquals("Wrong number of reservations", 1, single.size());
+        assertEquals("Wrong number of reservations", 5, several.size());
+        assertEquals("Users should be read along with their reservations", "florencia.prieto@disney.com",
+                single.get(0).getUser().getEmail());
+        assertEquals("Listing should take a single statement", 1L, singleStatements);
+        assertEquals("Statements shouldn't grow with the number of guests", singleStatements, severalStatements);
+        assertEquals("Nothing should be loaded into the persistence context", 0L, statistics.getEntityLoadCount());
+
+    }
+
+    @Test
+    public void testUsersWithReservationsCanBeHashed() {
+
+        User user = createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+        Reservation reservation = createReservation(Instant.parse("2018-05-12T00:00:00Z"),
+                Instant.parse("2018-05-13T00:00:00Z"), user);
+        user.setReservations(Collections.singletonList(reservation));
+
+        User copy = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+        copy.setId(user.getId());
+
+        assertEquals("Users should be equal regardless of their reservations", user, copy);
+        assertEquals("Equal users should have the same hash code", user.hashCode(), copy.hashCode());
+        assertEquals("Reservations should be hashable", reservation.hashCode(), reservation.hashCode());
+
+    }
+
     private User createUser(String firstName, String lastName, String email) {
         User user = ReservationTestUtil.createUser(firstName, lastName, email);
         return entityManager.persist(user);
@@ -249,6 +448,12 @@ public class ReservationRepositoryTest {
         return entityManager.persist(reservation);
     }
 
+    private Reservation createReservation(Instant startDate, Instant endDate, Long siteId) {
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate);
+        reservation.setSiteId(siteId);
+        return entityManager.persist(reservation);
+    }
+
     private Reservation createReservation(Instant startDate, Instant endDate, User user) {
         Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate, user);
         return entityManager.persist(reservation);
@@ -0,0 +1,60 @@
+package com.pmattioli.campsite.reservations.data.repo;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class UserRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testFindByEmailReturnsStoredUser() {
+
+        User user = entityManager.persist(ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com"));
+        entityManager.persist(ReservationTestUtil.createUser("Pablo", "Mattioli", "pablo@mattioli.com"));
+
+        assertEquals("Wrong user", user.getId(), userRepository.findByEmail("florpri@gmail.com").get().getId());
+        assertTrue("Unknown email shouldn't match", !userRepository.findByEmail("nobody@gmail.com").isPresent());
+
+    }
+
+    @Test
+    public void testDuplicateEmailIsRejected() {
+
+        userRepository.saveAndFlush(ReservationTestUtil.createUser("Florencia", "Prieto", "florpri@gmail.com"));
+
+        thrown.expect(DataIntegrityViolationException.class);
+
+        userRepository.saveAndFlush(ReservationTestUtil.createUser("Flor", "Prieto", "florpri@gmail.com"));
+
+    }
+
+    @SpringBootApplication
+    @EnableJpaRepositories
+    static class TestConfiguration {
+    }
+
+}
@@ -3,6 +3,9 @@ package com.pmattioli.campsite.reservations.service;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.util.AssertionErrors.assertEquals;
 import static org.springframework.test.util.AssertionErrors.assertNotEquals;
@@ -10,8 +13,14 @@ import static org.springframework.test.util.AssertionErrors.assertTrue;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -22,16 +31,28 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.pmattioli.campsite.reservations.data.repo.ArchivedReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
 import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNightRepository;
 import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
 import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.data.repo.UserRepository;
+import com.pmattioli.campsite.reservations.service.impl.CalendarVersions;
 import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(properties = {"campsite.reservation.length.maximum=3","campsite.reservation.list.default=3",
-"campsite.reservation.days-ahead.minimum=1","campsite.reservation.days-ahead.maximum=30"})
+"campsite.reservation.days-ahead.minimum=1","campsite.reservation.days-ahead.maximum=30",
+"campsite.reservation.list.cache.maximum-size=16","campsite.reservation.list.cache.time-to-live-seconds=60",
+"campsite.reservation.list.page.default-size=2","campsite.reservation.list.page.maximum-size=10",
+"campsite.reservation.sites.count=3","campsite.reservation.night-table.enabled=false",
+"campsite.reservation.batch.maximum-size=5","campsite.reservation.async.pool-size=2",
+"campsite.reservation.async.queue-capacity=4","campsite.reservation.user-cache.maximum-size=16"})
 public class ReservationsServiceTest {
 
     public static final Instant START_DATE_UTC = Instant.now().plus(3, ChronoUnit.DAYS);
@@ -52,18 +73,40 @@ public class ReservationsServiceTest {
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private AsyncReservationsService asyncReservationsService;
+
     @MockBean
     private ReservationRepository reservationRepository;
 
+    @MockBean
+    private ReservationNightRepository reservationNightRepository;
+
+    @MockBean
+    private UserRepository userRepository;
+
+    @MockBean
+    private ArchivedReservationRepository archivedReservationRepository;
+
+    @MockBean
+    private CalendarVersions calendarVersions;
+
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Before
+    public void setUp() {
+        given(this.reservationRepository.save(any(Reservation.class)))
+                .willAnswer(invocation -> invocation.getArgument(0));
+        given(this.userRepository.saveAndFlush(any(User.class)))
+                .willAnswer(invocation -> invocation.getArgument(0));
+    }
 
     @Test
     public void testCreateShouldThrowExceptionWhenConflict(){
 
-        given(this.reservationRepository.findReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC)).willReturn(
-                Collections.singletonList(new Reservation()));
+        given(this.reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(true);
 
         thrown.expect(IllegalStateException.class);
         thrown.expectMessage("An existing reservation conflicts with the selected dates");
@@ -76,25 +119,72 @@ public class ReservationsServiceTest {
     @Test
     public void testCreateWhenDatesAvailableWithStartDateAndEndDateShouldBeSuccessful(){
 
-        given(this.reservationRepository.findReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC)).willReturn(
-                Collections.emptyList());
+        given(this.reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(false);
 
         reservationsService.createReservation(null, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS));
 
-        verify(this.reservationRepository).findReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC);
+        verify(this.reservationRepository).existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC);
 
     }
 
     @Test
-    public void testReservationRepositoryReturnsNull(){
+    public void testCreateDoesNotLoadConflictingReservations(){
 
-        given(this.reservationRepository.findReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC)).willReturn(
-                null);
+        reservationsService.createReservation(null, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS));
 
-        thrown.expect(IllegalStateException.class);
-        thrown.expectMessage("Illegal state: 'reservationsConflictingWithRange' list is null");
+        verify(this.reservationRepository, never()).findReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC);
+        verify(this.reservationRepository, never()).listReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC);
 
-        reservationsService.createReservation(null, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+    }
+
+    @Test
+    public void testHistoryMergesLiveAndArchivedReservationsOnce(){
+
+        Instant start = START_DATE_UTC.minus(30, ChronoUnit.DAYS);
+        Instant end = start.plus(campsiteReservationLengthDefault, ChronoUnit.DAYS);
+
+        Reservation archived = ReservationTestUtil.createReservation(start, start.plus(1, ChronoUnit.DAYS));
+        archived.setId(1L);
+        Reservation live = ReservationTestUtil.createReservation(start.plus(1, ChronoUnit.DAYS),
+                start.plus(2, ChronoUnit.DAYS));
+        live.setId(2L);
+
+        // The live reservation was archived between both queries, so it's found in both tables
+        given(this.reservationRepository.listReservationsConflictingWithRange(start, end))
+                .willReturn(Collections.singletonList(live));
+        given(this.archivedReservationRepository.listReservationsConflictingWithRange(start, end))
+                .willReturn(Arrays.asList(archived, ReservationTestUtil.copy(live)));
+
+        assertEquals("Wrong history", Arrays.asList(archived, live),
+                reservationsService.listReservationHistoryWithinTimeRange(start, null));
+
+    }
+
+    @Test
+    public void testListingIncludesReservationWrittenByAnotherInstance(){
+
+        Instant start = START_DATE_UTC.plus(20, ChronoUnit.DAYS);
+        given(this.calendarVersions.get(any(Instant.class), any(Instant.class))).willReturn(1L);
+
+        assertEquals("Wrong reservations", Collections.emptyList(),
+                reservationsService.listReservationsWithinTimeRange(start, null));
+
+        // Stored by another instance, which bumped the calendar days it touched
+        Reservation stored = ReservationTestUtil.createReservation(start, start.plus(1, ChronoUnit.DAYS));
+        stored.setId(42L);
+        stored.setVersion(1L);
+        given(this.calendarVersions.get(any(Instant.class), any(Instant.class))).willReturn(2L);
+        given(this.reservationRepository.listReservationsConflictingWithRange(any(Instant.class), any(Instant.class)))
+                .willReturn(Collections.singletonList(stored));
+
+        assertEquals("Wrong reservations", Collections.singletonList(stored),
+                reservationsService.listReservationsWithinTimeRange(start, null));
+        assertEquals("Wrong reservations", Collections.singletonList(stored),
+                reservationsService.listReservationsWithinTimeRange(start, null));
+
+        verify(this.reservationRepository, times(2)).listReservationsConflictingWithRange(any(Instant.class),
+                any(Instant.class));
 
     }
 
@@ -210,8 +300,8 @@ public class ReservationsServiceTest {
 
         User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
 
-        given(this.reservationRepository.findReservationsConflictingWithRange(START_DATE_UTC, END_DATE_UTC)).willReturn(
-                Collections.singletonList(new Reservation()));
+        given(this.reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(true);
 
         thrown.expect(IllegalStateException.class);
         thrown.expectMessage("An existing reservation conflicts with the selected dates");
@@ -220,6 +310,214 @@ public class ReservationsServiceTest {
 
     }
 
+    @Test
+    public void testCreateReservationConflictCapturesNoStackTrace(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        given(this.reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(true);
+
+        try {
+            reservationsService.createReservation(user, START_DATE_UTC, END_DATE_UTC);
+        } catch (ReservationConflictException ex) {
+            assertEquals("Conflict should have no stack trace", 0, ex.getStackTrace().length);
+            return;
+        }
+        throw new AssertionError("Conflict should be rejected");
+
+    }
+
+    @Test
+    public void testAsyncCreateReservationCompletesWithCreatedReservation() throws Exception {
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        Reservation reservation = asyncReservationsService.createReservation(2L, user, START_DATE_UTC, END_DATE_UTC)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals("Wrong site ID", 2L, reservation.getSiteId());
+
+    }
+
+    @Test
+    public void testAsyncCreateReservationCompletesWithUnwrappedConflict() throws Exception {
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        given(this.reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(true);
+
+        CompletableFuture<Throwable> failure = asyncReservationsService.createReservation(null, user,
+                START_DATE_UTC, END_DATE_UTC).handle((reservation, ex) -> ex);
+
+        assertEquals("Wrong error", ReservationConflictException.class,
+                failure.get(10, TimeUnit.SECONDS).getClass());
+
+    }
+
+    @Test
+    public void testCreateReservationForRepeatGuestReusesStoredUser(){
+
+        User storedUser = ReservationTestUtil.createUser("Florencia", "Prieto", "repeat.guest@disney.com");
+        storedUser.setId(5L);
+        given(this.userRepository.findByEmail("repeat.guest@disney.com")).willReturn(Optional.of(storedUser));
+        given(this.userRepository.getOne(5L)).willReturn(storedUser);
+
+        Reservation first = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "repeat.guest@disney.com"), START_DATE_UTC,
+                END_DATE_UTC);
+        Reservation second = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "repeat.guest@disney.com"),
+                END_DATE_UTC.plus(1, ChronoUnit.DAYS), END_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("First reservation should belong to stored user", 5L, first.getUser().getId());
+        assertEquals("Second reservation should belong to stored user", 5L, second.getUser().getId());
+        // The second booking is resolved through the cache
+        verify(this.userRepository).findByEmail("repeat.guest@disney.com");
+        verify(this.userRepository, never()).saveAndFlush(any(User.class));
+
+    }
+
+    @Test
+    public void testCreateReservationForRepeatGuestUpdatesStoredNames(){
+
+        User storedUser = ReservationTestUtil.createUser("Florencia", "Prieto", "renamed.guest@disney.com");
+        storedUser.setId(6L);
+        given(this.userRepository.findByEmail("renamed.guest@disney.com")).willReturn(Optional.of(storedUser));
+        given(this.userRepository.getOne(6L)).willReturn(storedUser);
+
+        reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "renamed.guest@disney.com"), START_DATE_UTC,
+                END_DATE_UTC);
+        Reservation renamed = reservationsService.createReservation(
+                ReservationTestUtil.createUser("Florencia", "Prieto Diaz", "renamed.guest@disney.com"),
+                END_DATE_UTC.plus(1, ChronoUnit.DAYS), END_DATE_UTC.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Reservation should belong to stored user", 6L, renamed.getUser().getId());
+        assertEquals("Stored user should take the new name", "Prieto Diaz", storedUser.getLastName());
+        // Names not matching the cached ones have the stored user loaded again
+        verify(this.userRepository, times(2)).findByEmail("renamed.guest@disney.com");
+
+    }
+
+    @Test
+    public void testCreateReservationAtAnotherSiteIgnoresConflictsAtDefaultSite(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        given(this.reservationRepository.existsSiteReservationConflictingWithRange(1L, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(true);
+
+        Reservation reservation = reservationsService.createReservation(2L, user, START_DATE_UTC, END_DATE_UTC);
+
+        assertEquals("Wrong site ID", 2L, reservation.getSiteId());
+
+    }
+
+    @Test
+    public void testCreateReservationAtUnknownSiteThrowsException(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Site 4 doesn't exist");
+
+        reservationsService.createReservation(4L, user, START_DATE_UTC, END_DATE_UTC);
+
+    }
+
+    @Test
+    public void testListAvailableSitesChecksAllSitesWithSingleQuery(){
+
+        List<Long> siteIds = Arrays.asList(1L, 2L, 3L);
+
+        given(this.reservationRepository.findOccupiedSitesWithinRange(siteIds, START_DATE_UTC, END_DATE_UTC))
+                .willReturn(Collections.singletonList(3L));
+
+        List<Long> availableSiteIds = reservationsService.listAvailableSites(START_DATE_UTC, 3);
+
+        assertEquals("Wrong available sites", Arrays.asList(1L, 2L), availableSiteIds);
+
+    }
+
+    @Test
+    public void testListReservationPageReturnsCursorAfterLastReservationWhenMoreRemain(){
+
+        Instant endDate = START_DATE_UTC.plus(campsiteReservationLengthDefault, ChronoUnit.DAYS);
+        Reservation first = createReservation(1L, START_DATE_UTC);
+        Reservation second = createReservation(2L, START_DATE_UTC);
+        Reservation third = createReservation(3L, START_DATE_UTC.plus(1, ChronoUnit.DAYS));
+
+        given(this.reservationRepository.findReservationPageConflictingWithRange(START_DATE_UTC, endDate,
+                PageRequest.of(0, 3))).willReturn(Arrays.asList(first, second, third));
+
+        ReservationPage page = reservationsService.listReservationsWithinTimeRange(START_DATE_UTC, null, null, null);
+
+        assertEquals("Wrong page", Arrays.asList(first, second), page.getReservations());
+        assertEquals("Wrong next cursor", new ReservationCursor(START_DATE_UTC, 2L), page.getNext());
+
+    }
+
+    @Test
+    public void testListReservationPageAfterCursorReturnsLastPageWithoutCursor(){
+
+        Instant endDate = START_DATE_UTC.plus(campsiteReservationLengthDefault, ChronoUnit.DAYS);
+        Reservation third = createReservation(3L, START_DATE_UTC.plus(1, ChronoUnit.DAYS));
+
+        given(this.reservationRepository.findReservationPageConflictingWithRangeAfter(START_DATE_UTC, endDate,
+                START_DATE_UTC, 2L, PageRequest.of(0, 3))).willReturn(Collections.singletonList(third));
+
+        ReservationPage page = reservationsService.listReservationsWithinTimeRange(START_DATE_UTC, null,
+                new ReservationCursor(START_DATE_UTC, 2L), null);
+
+        assertEquals("Wrong page", Collections.singletonList(third), page.getReservations());
+        assertEquals("Last page shouldn't have a next cursor", null, page.getNext());
+
+    }
+
+    @Test
+    public void testListReservationPageExceedingMaximumSizeThrowsException(){
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Page size must be between 1 and 10");
+
+        reservationsService.listReservationsWithinTimeRange(START_DATE_UTC, null, null, 11);
+
+    }
+
+    @Test
+    public void testListAvailableDateRangesReturnsGapsBetweenOccupiedRanges(){
+
+        Instant startDate = Instant.parse("2018-05-10T00:00:00Z");
+
+        given(this.reservationRepository.findOccupiedRangesWithinRange(1L, startDate, startDate.plus(10, ChronoUnit.DAYS)))
+                .willReturn(Arrays.asList(
+                        new DateRange(Instant.parse("2018-05-08T00:00:00Z"), Instant.parse("2018-05-11T00:00:00Z")),
+                        new DateRange(Instant.parse("2018-05-13T00:00:00Z"), Instant.parse("2018-05-15T00:00:00Z")),
+                        new DateRange(Instant.parse("2018-05-14T00:00:00Z"), Instant.parse("2018-05-16T00:00:00Z"))));
+
+        List<DateRange> availableRanges = reservationsService.listAvailableDateRanges(null, startDate, 10);
+
+        assertEquals("Wrong available ranges", Arrays.asList(
+                new DateRange(Instant.parse("2018-05-11T00:00:00Z"), Instant.parse("2018-05-13T00:00:00Z")),
+                new DateRange(Instant.parse("2018-05-16T00:00:00Z"), Instant.parse("2018-05-20T00:00:00Z"))),
+                availableRanges);
+
+    }
+
+    @Test
+    public void testListAvailableDateRangesWithoutReservationsReturnsWholeDefaultRange(){
+
+        Instant startDate = Instant.parse("2018-05-10T00:00:00Z");
+
+        List<DateRange> availableRanges = reservationsService.listAvailableDateRanges(null, startDate, null);
+
+        assertEquals("Wrong available ranges", Collections.singletonList(new DateRange(startDate,
+                startDate.plus(campsiteReservationLengthDefault, ChronoUnit.DAYS))), availableRanges);
+
+    }
+
     @Test
     public void testUpdateReservationSuccessfullyReturnsUpdatedReservation(){
 
@@ -237,6 +535,27 @@ public class ReservationsServiceTest {
 
     }
 
+    @Test
+    public void testUpdateReservationWithoutSiteKeepsStoredSite(){
+
+        Reservation stored = ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC);
+        stored.setId(1L);
+        stored.setVersion(1L);
+        stored.setSiteId(3L);
+        given(this.reservationRepository.findById(1L)).willReturn(Optional.of(stored));
+
+        Reservation reservation = ReservationTestUtil.createReservation(START_DATE_UTC.plus(1, ChronoUnit.DAYS),
+                END_DATE_UTC.plus(1, ChronoUnit.DAYS));
+        reservation.setId(1L);
+        reservation.setVersion(1L);
+        reservation.setSiteId(null);
+
+        Reservation updatedReservation = reservationsService.updateReservation(reservation);
+
+        assertEquals("Reservation should stay at its site", 3L, updatedReservation.getSiteId());
+
+    }
+
     @Test
     public void testUpdateReservationWithNullIdThrowsIllegalArgumentException(){
 
@@ -279,6 +598,8 @@ public class ReservationsServiceTest {
         reservation.setId(1L);
         reservation.setVersion(1L);
 
+        given(this.reservationRepository.findById(1L)).willReturn(Optional.of(ReservationTestUtil.copy(reservation)));
+
         ArgumentCaptor<Reservation> captor = ArgumentCaptor.forClass(Reservation.class);
 
         reservationsService.deleteReservation(reservation);
@@ -286,6 +607,30 @@ public class ReservationsServiceTest {
         verify(this.reservationRepository).delete(captor.capture());
 
         assertEquals("Deleted reservation ID has wrong value", captor.getValue().getId(), 1L);
+        verify(this.userRepository, never()).findByEmail(any(String.class));
+        verify(this.userRepository, never()).saveAndFlush(any(User.class));
+
+    }
+
+    @Test
+    public void testDeleteStaleReservationThrowsStaleReservationException(){
+
+        Reservation reservation = ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC,
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"));
+        reservation.setId(1L);
+        reservation.setVersion(1L);
+
+        Reservation stored = ReservationTestUtil.copy(reservation);
+        stored.setVersion(2L);
+        given(this.reservationRepository.findById(1L)).willReturn(Optional.of(stored));
+
+        thrown.expect(StaleReservationException.class);
+
+        try {
+            reservationsService.deleteReservation(reservation);
+        } finally {
+            verify(this.reservationRepository, never()).delete(any(Reservation.class));
+        }
 
     }
 
@@ -318,6 +663,151 @@ public class ReservationsServiceTest {
 
     }
 
+    @Test
+    public void testApplyBatchRejectsOperationsConflictingWithPreviousOnes(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        List<BatchResult> results = reservationsService.applyBatch(Arrays.asList(
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user)),
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC.plus(1, ChronoUnit.DAYS),
+                        END_DATE_UTC.plus(1, ChronoUnit.DAYS), user)),
+                BatchOperation.create(ReservationTestUtil.createReservation(END_DATE_UTC.plus(1, ChronoUnit.DAYS),
+                        END_DATE_UTC.plus(2, ChronoUnit.DAYS), user))));
+
+        assertTrue("First reservation should be created", results.get(0).isApplied());
+        assertEquals("Wrong error", ReservationConflictException.class, results.get(1).getError().getClass());
+        assertTrue("Third reservation should be created", results.get(2).isApplied());
+        verify(this.reservationRepository, times(1)).flush();
+
+    }
+
+    @Test
+    public void testApplyBatchRejectsStaleAndInvalidOperationsOnly(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        Reservation stored = ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user);
+        stored.setId(1L);
+        stored.setVersion(2L);
+        given(this.reservationRepository.findAllById(Collections.singleton(1L)))
+                .willReturn(Collections.singletonList(stored));
+
+        Reservation stale = ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user);
+        stale.setId(1L);
+        stale.setVersion(1L);
+
+        List<BatchResult> results = reservationsService.applyBatch(Arrays.asList(
+                BatchOperation.update(stale),
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC,
+                        START_DATE_UTC.plus(4, ChronoUnit.DAYS), user)),
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user))));
+
+        assertEquals("Wrong error", StaleReservationException.class,
+                results.get(0).getError().getClass());
+        assertEquals("Wrong error", IllegalArgumentException.class, results.get(1).getError().getClass());
+        assertTrue("Last reservation should be created", results.get(2).isApplied());
+
+    }
+
+    @Test
+    public void testApplyBatchIsAppliedAgainWhenConcurrentWriteIsRefused(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        // A concurrent write takes the dates between the checks and the flush of the first attempt only
+        willThrow(new DataIntegrityViolationException("Duplicate night")).willDoNothing()
+                .given(this.reservationRepository).flush();
+
+        List<BatchResult> results = reservationsService.applyBatch(Arrays.asList(
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user)),
+                BatchOperation.create(ReservationTestUtil.createReservation(END_DATE_UTC.plus(1, ChronoUnit.DAYS),
+                        END_DATE_UTC.plus(2, ChronoUnit.DAYS), user))));
+
+        assertTrue("First reservation should be created", results.get(0).isApplied());
+        assertTrue("Second reservation should be created", results.get(1).isApplied());
+        verify(this.reservationRepository, times(2)).flush();
+
+    }
+
+    @Test
+    public void testApplyBatchRefusedOnEveryAttemptThrowsReservationConflictException(){
+
+        User user = ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com");
+
+        willThrow(new DataIntegrityViolationException("Duplicate night")).given(this.reservationRepository).flush();
+
+        thrown.expect(ReservationConflictException.class);
+
+        try {
+            reservationsService.applyBatch(Collections.singletonList(
+                    BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user))));
+        } finally {
+            verify(this.reservationRepository, times(3)).flush();
+        }
+
+    }
+
+    @Test
+    public void testApplyBatchUsesUserStoredByConcurrentRequest(){
+
+        User user = ReservationTestUtil.createUser("Martina", "Rossi", "martina.rossi@disney.com");
+        User storedUser = ReservationTestUtil.createUser("Martina", "Rossi", "martina.rossi@disney.com");
+        storedUser.setId(7L);
+
+        given(this.userRepository.findByEmail("martina.rossi@disney.com"))
+                .willReturn(Optional.empty(), Optional.of(storedUser));
+        given(this.userRepository.saveAndFlush(any(User.class)))
+                .willThrow(new DataIntegrityViolationException("Duplicate email"));
+
+        List<BatchResult> results = reservationsService.applyBatch(Collections.singletonList(
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC, user))));
+
+        assertTrue("Reservation should be created", results.get(0).isApplied());
+        assertEquals("Wrong user", 7L, results.get(0).getReservation().getUser().getId());
+
+    }
+
+    @Test
+    public void testApplyBatchUpdateWithoutSiteKeepsStoredSite(){
+
+        Reservation stored = ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC);
+        stored.setId(1L);
+        stored.setVersion(1L);
+        stored.setSiteId(3L);
+        given(this.reservationRepository.findAllById(Collections.singleton(1L)))
+                .willReturn(Collections.singletonList(stored));
+
+        Reservation reservation = ReservationTestUtil.createReservation(START_DATE_UTC.plus(1, ChronoUnit.DAYS),
+                END_DATE_UTC.plus(1, ChronoUnit.DAYS));
+        reservation.setId(1L);
+        reservation.setVersion(1L);
+        reservation.setSiteId(null);
+
+        List<BatchResult> results = reservationsService.applyBatch(
+                Collections.singletonList(BatchOperation.update(reservation)));
+
+        assertEquals("Reservation should stay at its site", 3L, results.get(0).getReservation().getSiteId());
+
+    }
+
+    @Test
+    public void testApplyBatchExceedingMaximumSizeThrowsException(){
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Batches can't exceed 5 operations");
+
+        reservationsService.applyBatch(Collections.nCopies(6,
+                BatchOperation.create(ReservationTestUtil.createReservation(START_DATE_UTC, END_DATE_UTC))));
+
+    }
+
+    private static Reservation createReservation(final Long id, final Instant startDate) {
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, startDate.plus(1, ChronoUnit.DAYS));
+        reservation.setId(id);
+        return reservation;
+    }
+
     @SpringBootApplication
     static class TestConfiguration {
     }
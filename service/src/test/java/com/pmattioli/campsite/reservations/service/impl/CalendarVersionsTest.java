@@ -0,0 +1,72 @@
+package com.pmattioli.campsite.reservations.service.impl;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.data.repo.DateRange;
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(CalendarVersions.class)
+public class CalendarVersionsTest {
+
+    @Autowired
+    private CalendarVersions calendarVersions;
+
+    @Test
+    public void testVersionChangesWithEveryWriteToTheRange() {
+
+        Instant start = Instant.parse("2018-05-10T00:00:00Z");
+
+        assertEquals("Days never written should count as 0", 0L,
+                calendarVersions.get(start, start.plus(5, ChronoUnit.DAYS)));
+
+        // Touches the first two days, only partially the second one
+        calendarVersions.bump(start, start.plus(1, ChronoUnit.DAYS).plus(10, ChronoUnit.HOURS));
+        long version = calendarVersions.get(start, start.plus(5, ChronoUnit.DAYS));
+
+        calendarVersions.bump(start.plus(1, ChronoUnit.DAYS), start.plus(2, ChronoUnit.DAYS));
+
+        assertEquals("Version should go up", version + 1, calendarVersions.get(start, start.plus(5, ChronoUnit.DAYS)));
+        assertEquals("Days after the writes shouldn't change", 0L,
+                calendarVersions.get(start.plus(2, ChronoUnit.DAYS), start.plus(5, ChronoUnit.DAYS)));
+
+    }
+
+    @Test
+    public void testOverlappingRangesAreBumpedOnce() {
+
+        Instant start = Instant.parse("2018-06-10T00:00:00Z");
+        calendarVersions.bump(start, start.plus(4, ChronoUnit.DAYS));
+        long version = calendarVersions.get(start, start.plus(4, ChronoUnit.DAYS));
+
+        calendarVersions.bump(Arrays.asList(new DateRange(start.plus(2, ChronoUnit.DAYS), start.plus(4, ChronoUnit.DAYS)),
+                new DateRange(start, start.plus(3, ChronoUnit.DAYS))));
+
+        assertEquals("Every day should be bumped once", version + 4,
+                calendarVersions.get(start, start.plus(4, ChronoUnit.DAYS)));
+
+    }
+
+    @SpringBootApplication
+    @EnableJpaRepositories(basePackageClasses = ReservationRepository.class)
+    @EntityScan(basePackageClasses = Reservation.class)
+    static class TestConfiguration {
+    }
+
+}
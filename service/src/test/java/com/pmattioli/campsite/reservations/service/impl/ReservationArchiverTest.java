@@ -0,0 +1,115 @@
+package com.pmattioli.campsite.reservations.service.impl;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.pmattioli.campsite.reservations.data.repo.ArchivedReservation;
+import com.pmattioli.campsite.reservations.data.repo.ArchivedReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNight;
+import com.pmattioli.campsite.reservations.data.repo.ReservationNightRepository;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.data.repo.User;
+import com.pmattioli.campsite.reservations.service.index.EpochDays;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import({ ReservationArchiver.class, CalendarVersions.class })
+@TestPropertySource(properties = {"campsite.reservation.archive.enabled=true",
+        "campsite.reservation.archive.cron=0 30 3 * * *", "campsite.reservation.archive.retention-days=1",
+        "campsite.reservation.archive.chunk-size=2"})
+public class ReservationArchiverTest {
+
+    private static final Instant TODAY = EpochDays.toInstant(EpochDays.today());
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ReservationArchiver archiver;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ArchivedReservationRepository archivedReservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Test
+    public void testReservationsEndedBeforeRetentionPeriodAreArchivedInChunks() {
+
+        User user = entityManager.persist(
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"));
+        Reservation first = null;
+        for (int i = 0; i < 5; i++) {
+            Reservation past = createReservation(TODAY.minus(10 - i, ChronoUnit.DAYS),
+                    TODAY.minus(9 - i, ChronoUnit.DAYS), user);
+            if (first == null) {
+                first = past;
+            }
+        }
+        entityManager.persist(new ReservationNight(
+                LocalDate.ofEpochDay(EpochDays.floor(first.getStartDate())), first));
+        // Ended today and yesterday, so still within the retention period
+        createReservation(TODAY.minus(1, ChronoUnit.DAYS), TODAY, user);
+        createReservation(TODAY.plus(2, ChronoUnit.DAYS), TODAY.plus(3, ChronoUnit.DAYS), user);
+        entityManager.flush();
+
+        assertEquals("Wrong number of archived reservations", 5, archiver.archive());
+
+        assertEquals("Recent reservations should stay live", 2L, reservationRepository.count());
+        assertEquals("Wrong number of archived reservations", 5L, archivedReservationRepository.count());
+        assertEquals("Nights of archived reservations should be deleted", 0L, reservationNightRepository.count());
+
+        ArchivedReservation archived = archivedReservationRepository.findById(first.getId()).get();
+        assertEquals("Version should be kept", first.getVersion(), archived.getVersion());
+        assertEquals("Dates should be kept", first.getStartDate(), archived.getStartDate());
+
+        List<Reservation> history = archivedReservationRepository.listReservationsConflictingWithRange(
+                TODAY.minus(10, ChronoUnit.DAYS), TODAY.minus(9, ChronoUnit.DAYS));
+        assertEquals("Wrong number of reservations", 1, history.size());
+        assertEquals("User should be kept", "florencia.prieto@disney.com", history.get(0).getUser().getEmail());
+
+    }
+
+    @Test
+    public void testNothingIsArchivedWhenEveryReservationIsRecent() {
+
+        createReservation(TODAY.minus(1, ChronoUnit.DAYS), TODAY, null);
+
+        assertEquals("Nothing should be archived", 0, archiver.archive());
+        assertEquals("Reservation should stay live", 1L, reservationRepository.count());
+
+    }
+
+    private Reservation createReservation(Instant startDate, Instant endDate, User user) {
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate, user);
+        return entityManager.persist(reservation);
+    }
+
+    @SpringBootApplication
+    @EnableJpaRepositories(basePackageClasses = ReservationRepository.class)
+    @EntityScan(basePackageClasses = Reservation.class)
+    static class TestConfiguration {
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import static org.junit.Assert.assertFalse;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import org.junit.Test;
+
+public class DayBitmapTest {
+
+    private static final long BASE_DAY = 17_800L;
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals("Wrong capacity", 64, new DayBitmap(34, BASE_DAY).getCapacity());
+        assertEquals("Wrong capacity", 128, new DayBitmap(65, BASE_DAY).getCapacity());
+    }
+
+    @Test
+    public void testAddedRangeIsReportedAsOccupied() {
+        DayBitmap bitmap = new DayBitmap(34, BASE_DAY);
+
+        bitmap.add(BASE_DAY + 3, BASE_DAY + 6);
+
+        assertTrue("Overlapping range should be occupied", bitmap.isAnySet(BASE_DAY + 5, BASE_DAY + 8));
+        assertTrue("Contained range should be occupied", bitmap.isAnySet(BASE_DAY + 4, BASE_DAY + 5));
+        assertFalse("Back to back range should be free", bitmap.isAnySet(BASE_DAY + 6, BASE_DAY + 9));
+        assertFalse("Back to back range should be free", bitmap.isAnySet(BASE_DAY, BASE_DAY + 3));
+    }
+
+    @Test
+    public void testRangeSpanningSeveralWordsIsChecked() {
+        DayBitmap bitmap = new DayBitmap(200, BASE_DAY);
+
+        bitmap.add(BASE_DAY + 150, BASE_DAY + 151);
+
+        assertTrue("Range spanning words should be occupied", bitmap.isAnySet(BASE_DAY + 10, BASE_DAY + 160));
+        assertFalse("Range spanning words should be free", bitmap.isAnySet(BASE_DAY + 10, BASE_DAY + 150));
+    }
+
+    @Test
+    public void testOverlappingRangesAreRemovedIndependently() {
+        DayBitmap bitmap = new DayBitmap(34, BASE_DAY);
+
+        bitmap.add(BASE_DAY + 3, BASE_DAY + 6);
+        bitmap.add(BASE_DAY + 5, BASE_DAY + 8);
+        bitmap.remove(BASE_DAY + 3, BASE_DAY + 6);
+
+        assertFalse("Removed range should be free", bitmap.isAnySet(BASE_DAY + 3, BASE_DAY + 5));
+        assertTrue("Remaining range should be occupied", bitmap.isAnySet(BASE_DAY + 5, BASE_DAY + 6));
+    }
+
+    @Test
+    public void testWindowWrapsAroundAfterAdvancing() {
+        DayBitmap bitmap = new DayBitmap(64, BASE_DAY);
+
+        bitmap.add(BASE_DAY, BASE_DAY + 2);
+        bitmap.advanceTo(BASE_DAY + 60);
+
+        assertFalse("Days left behind should be released", bitmap.isAnySet(BASE_DAY + 64, BASE_DAY + 66));
+
+        bitmap.add(BASE_DAY + 63, BASE_DAY + 66);
+
+        assertTrue("Wrapped range should be occupied", bitmap.isAnySet(BASE_DAY + 60, BASE_DAY + 124));
+        assertTrue("Wrapped range should be occupied", bitmap.isAnySet(BASE_DAY + 65, BASE_DAY + 66));
+        assertFalse("Range after wrapped one should be free", bitmap.isAnySet(BASE_DAY + 66, BASE_DAY + 124));
+    }
+
+}
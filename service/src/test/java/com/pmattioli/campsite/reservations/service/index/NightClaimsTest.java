@@ -0,0 +1,101 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class NightClaimsTest {
+
+    private static final Instant START_DATE_UTC = Instant.parse("2018-05-12T00:00:00Z");
+
+    private final NightClaims nightClaims = new NightClaims(30, 3, 2);
+
+    @Test
+    public void testOverlappingClaimFailsUntilReleased() {
+
+        NightClaims.Claim claim = nightClaims.tryClaim(1L, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+
+        assertTrue("First claim should succeed", claim != null);
+        assertEquals("Overlapping claim should fail", null, nightClaims.tryClaim(1L,
+                START_DATE_UTC.plus(2, ChronoUnit.DAYS), START_DATE_UTC.plus(4, ChronoUnit.DAYS)));
+
+        claim.release();
+
+        assertTrue("Claim should succeed after release", nightClaims.tryClaim(1L, START_DATE_UTC.plus(2, ChronoUnit.DAYS),
+                START_DATE_UTC.plus(4, ChronoUnit.DAYS)) != null);
+    }
+
+    @Test
+    public void testFailedClaimReleasesAcquiredNights() {
+
+        nightClaims.tryClaim(1L, START_DATE_UTC.plus(2, ChronoUnit.DAYS), START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+
+        assertEquals("Overlapping claim should fail", null,
+                nightClaims.tryClaim(1L, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS)));
+
+        assertTrue("Nights acquired by the failed claim should be free",
+                nightClaims.tryClaim(1L, START_DATE_UTC, START_DATE_UTC.plus(2, ChronoUnit.DAYS)) != null);
+    }
+
+    @Test
+    public void testSameNightsAtDifferentSitesCanBeClaimed() {
+
+        assertTrue("Claim at first site should succeed",
+                nightClaims.tryClaim(1L, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS)) != null);
+        assertTrue("Claim at second site should succeed",
+                nightClaims.tryClaim(2L, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS)) != null);
+    }
+
+    @Test
+    public void testBackToBackClaimsSucceed() {
+
+        assertTrue("First claim should succeed",
+                nightClaims.tryClaim(1L, START_DATE_UTC, START_DATE_UTC.plus(3, ChronoUnit.DAYS)) != null);
+        assertTrue("Back to back claim should succeed", nightClaims.tryClaim(1L, START_DATE_UTC.plus(3, ChronoUnit.DAYS),
+                START_DATE_UTC.plus(6, ChronoUnit.DAYS)) != null);
+    }
+
+    @Test
+    public void testOnlyOneOfManyConcurrentOverlappingClaimsSucceeds() throws Exception {
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<NightClaims.Claim>> claims = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Instant startDate = START_DATE_UTC.plus(i % 3, ChronoUnit.DAYS);
+                Callable<NightClaims.Claim> claim = () -> {
+                    start.await();
+                    return nightClaims.tryClaim(1L, startDate, startDate.plus(3, ChronoUnit.DAYS));
+                };
+                claims.add(executor.submit(claim));
+            }
+            start.countDown();
+
+            int successfulClaims = 0;
+            for (Future<NightClaims.Claim> claim : claims) {
+                if (claim.get() != null) {
+                    successfulClaims++;
+                }
+            }
+
+            assertEquals("Exactly one overlapping claim should succeed", 1, successfulClaims);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
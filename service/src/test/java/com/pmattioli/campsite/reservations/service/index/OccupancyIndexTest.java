@@ -0,0 +1,117 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.data.repo.ReservationRepository;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+
+public class OccupancyIndexTest {
+
+    private static final Instant TODAY = EpochDays.toInstant(EpochDays.today());
+
+    private final ReservationRepository reservationRepository = mock(ReservationRepository.class);
+
+    private OccupancyIndex occupancyIndex;
+
+    @Before
+    public void setUp() {
+        given(reservationRepository.findReservationsConflictingWithRange(any(Instant.class), any(Instant.class)))
+                .willReturn(Collections.singletonList(createReservation(1L, 1L, 0L, 2, 5)));
+
+        occupancyIndex = new OccupancyIndex(reservationRepository, 3, 30, 2);
+        occupancyIndex.rebuild();
+    }
+
+    @Test
+    public void testReservationsLoadedFromRepositoryAreIndexed() {
+
+        assertTrue("Stored reservation should be indexed", isOccupied(1L, 3, 4));
+        assertFalse("Other sites should be free", isOccupied(2L, 3, 4));
+    }
+
+    @Test
+    public void testEventsKeepIndexUpToDate() {
+
+        occupancyIndex.onReservationEvent(ReservationEvent.created(createReservation(2L, 2L, 0L, 6, 8)));
+        occupancyIndex.onReservationEvent(ReservationEvent.updated(createReservation(1L, 2L, 1L, 10, 12)));
+
+        assertFalse("Moved reservation should release its nights", isOccupied(1L, 2, 5));
+        assertTrue("Moved reservation should take its new nights", isOccupied(2L, 10, 11));
+        assertTrue("Created reservation should be indexed", isOccupied(2L, 6, 7));
+
+        occupancyIndex.onReservationEvent(ReservationEvent.deleted(createReservation(2L, 2L, 0L, 6, 8)));
+
+        assertFalse("Deleted reservation should release its nights", isOccupied(2L, 6, 8));
+    }
+
+    @Test
+    public void testEventsDeliveredOutOfOrderAreIgnored() {
+
+        occupancyIndex.onReservationEvent(ReservationEvent.updated(createReservation(1L, 1L, 2L, 10, 12)));
+        // Committed before the update above, but delivered after it
+        occupancyIndex.onReservationEvent(ReservationEvent.updated(createReservation(1L, 1L, 1L, 6, 8)));
+
+        assertFalse("Older update shouldn't be applied", isOccupied(1L, 6, 8));
+        assertTrue("Newer update should be kept", isOccupied(1L, 10, 12));
+
+        occupancyIndex.onReservationEvent(ReservationEvent.deleted(createReservation(1L, 1L, 2L, 10, 12)));
+        occupancyIndex.onReservationEvent(ReservationEvent.updated(createReservation(1L, 1L, 2L, 10, 12)));
+
+        assertFalse("Deleted reservation shouldn't be brought back", isOccupied(1L, 10, 12));
+    }
+
+    @Test
+    public void testAvailableSitesAreFoundAcrossAllSites() {
+
+        assertEquals("Wrong available sites", Collections.singletonList(2L),
+                occupancyIndex.findAvailableSites(TODAY.plus(4, ChronoUnit.DAYS), TODAY.plus(6, ChronoUnit.DAYS)));
+        assertEquals("Wrong available sites", Arrays.asList(1L, 2L),
+                occupancyIndex.findAvailableSites(TODAY.plus(5, ChronoUnit.DAYS), TODAY.plus(6, ChronoUnit.DAYS)));
+    }
+
+    @Test
+    public void testBackToBackStaysOutsideOfMidnightDoNotConflict() {
+
+        Reservation reservation = createReservation(2L, 2L, 0L, 6, 8);
+        reservation.setStartDate(reservation.getStartDate().plus(14, ChronoUnit.HOURS));
+        reservation.setEndDate(reservation.getEndDate().plus(10, ChronoUnit.HOURS));
+        occupancyIndex.onReservationEvent(ReservationEvent.created(reservation));
+
+        assertFalse("Checking in on the check-out day shouldn't conflict", occupancyIndex.isOccupied(2L,
+                TODAY.plus(8, ChronoUnit.DAYS).plus(14, ChronoUnit.HOURS),
+                TODAY.plus(10, ChronoUnit.DAYS).plus(10, ChronoUnit.HOURS)));
+        assertTrue("Sharing a night should conflict", occupancyIndex.isOccupied(2L,
+                TODAY.plus(5, ChronoUnit.DAYS).plus(14, ChronoUnit.HOURS),
+                TODAY.plus(7, ChronoUnit.DAYS).plus(10, ChronoUnit.HOURS)));
+    }
+
+    private boolean isOccupied(final Long siteId, final int fromDay, final int toDay) {
+        return occupancyIndex.isOccupied(siteId, TODAY.plus(fromDay, ChronoUnit.DAYS), TODAY.plus(toDay,
+                ChronoUnit.DAYS));
+    }
+
+    private static Reservation createReservation(final Long id, final Long siteId, final Long version,
+            final int fromDay, final int toDay) {
+        Reservation reservation = new Reservation(TODAY.plus(fromDay, ChronoUnit.DAYS),
+                TODAY.plus(toDay, ChronoUnit.DAYS), null);
+        reservation.setId(id);
+        reservation.setSiteId(siteId);
+        reservation.setVersion(version);
+        return reservation;
+    }
+
+}
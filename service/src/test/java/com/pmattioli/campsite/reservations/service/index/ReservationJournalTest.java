@@ -0,0 +1,180 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.service.ReservationEvent;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+public class ReservationJournalTest {
+
+    private static final Instant TODAY = EpochDays.toInstant(EpochDays.today());
+
+    // Room for the header and three records
+    private static final int SMALL_CAPACITY = 12 + 3 * ReservationJournal.RECORD_SIZE + 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ReservationJournal journal;
+
+    private String directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder().getPath();
+        journal = open(4096, 100);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void testNewJournalHasNothingToRecover() {
+
+        assertTrue("There should be no snapshot to recover from", journal.getReservations() == null);
+
+    }
+
+    @Test
+    public void testRecoveryLoadsSnapshotAndReplaysJournalTail() throws IOException {
+
+        Reservation first = createReservation(1L, TODAY.plus(2, ChronoUnit.DAYS), TODAY.plus(4, ChronoUnit.DAYS));
+        Reservation second = createReservation(2L, TODAY.plus(5, ChronoUnit.DAYS), TODAY.plus(6, ChronoUnit.DAYS));
+        Reservation third = createReservation(3L, TODAY.plus(8, ChronoUnit.DAYS), TODAY.plus(9, ChronoUnit.DAYS));
+        journal.snapshot(Arrays.asList(first, second));
+
+        Reservation movedFirst = createReservation(1L, TODAY.plus(10, ChronoUnit.DAYS),
+                TODAY.plus(12, ChronoUnit.DAYS));
+        movedFirst.setVersion(2L);
+        journal.onReservationEvent(ReservationEvent.updated(movedFirst));
+        journal.onReservationEvent(ReservationEvent.deleted(second));
+        journal.onReservationEvent(ReservationEvent.created(third));
+
+        Map<Long, Reservation> recovered = reopen(4096, 100);
+
+        assertEquals("Wrong recovered reservations", 2, recovered.size());
+        assertEquals("Update should be replayed", movedFirst, recovered.get(1L));
+        assertEquals("Creation should be replayed", third, recovered.get(3L));
+
+    }
+
+    @Test
+    public void testEventsOlderThanKnownVersionsAreIgnored() throws IOException {
+
+        Reservation first = createReservation(1L, TODAY.plus(2, ChronoUnit.DAYS), TODAY.plus(4, ChronoUnit.DAYS));
+        Reservation second = createReservation(2L, TODAY.plus(5, ChronoUnit.DAYS), TODAY.plus(6, ChronoUnit.DAYS));
+        journal.snapshot(Arrays.asList(first, second));
+
+        Reservation newerFirst = createReservation(1L, TODAY.plus(10, ChronoUnit.DAYS),
+                TODAY.plus(12, ChronoUnit.DAYS));
+        newerFirst.setVersion(3L);
+        Reservation olderFirst = createReservation(1L, TODAY.plus(7, ChronoUnit.DAYS), TODAY.plus(8, ChronoUnit.DAYS));
+        olderFirst.setVersion(2L);
+        journal.onReservationEvent(ReservationEvent.updated(newerFirst));
+        journal.onReservationEvent(ReservationEvent.updated(olderFirst));
+        journal.onReservationEvent(ReservationEvent.deleted(second));
+        journal.onReservationEvent(ReservationEvent.updated(second));
+
+        assertEquals("Late events shouldn't be applied", Collections.singletonList(newerFirst),
+                journal.getReservations());
+        Map<Long, Reservation> recovered = reopen(4096, 100);
+        assertEquals("Late events shouldn't be replayed", Collections.singletonMap(1L, newerFirst), recovered);
+
+    }
+
+    @Test
+    public void testSnapshotIsTakenWhenJournalIsFull() throws IOException {
+
+        journal.close();
+        directory = folder.newFolder().getPath();
+        journal = open(SMALL_CAPACITY, 100);
+        journal.snapshot(Collections.emptyList());
+
+        for (long id = 1; id <= 10; id++) {
+            journal.onReservationEvent(ReservationEvent.created(createReservation(id,
+                    TODAY.plus(id, ChronoUnit.DAYS), TODAY.plus(id + 1, ChronoUnit.DAYS))));
+        }
+
+        Map<Long, Reservation> recovered = reopen(SMALL_CAPACITY, 100);
+
+        assertEquals("Every reservation should be recovered", 10, recovered.size());
+        assertEquals("Journal shouldn't grow past its capacity", (long) SMALL_CAPACITY,
+                Files.size(Paths.get(directory, ReservationJournal.JOURNAL_FILE)));
+
+    }
+
+    @Test
+    public void testSnapshotIsTakenEverySnapshotInterval() throws IOException {
+
+        journal.close();
+        directory = folder.newFolder().getPath();
+        journal = open(4096, 2);
+        journal.snapshot(Collections.emptyList());
+
+        for (long id = 1; id <= 5; id++) {
+            journal.onReservationEvent(ReservationEvent.created(createReservation(id,
+                    TODAY.plus(id, ChronoUnit.DAYS), TODAY.plus(id + 1, ChronoUnit.DAYS))));
+        }
+
+        assertEquals("Every reservation should be recovered", 5, reopen(4096, 2).size());
+
+    }
+
+    @Test
+    public void testEndedReservationsAreLeftOutOfSnapshots() throws IOException {
+
+        Reservation ended = createReservation(1L, TODAY.minus(3, ChronoUnit.DAYS), TODAY.minus(1, ChronoUnit.DAYS));
+        Reservation upcoming = createReservation(2L, TODAY.plus(1, ChronoUnit.DAYS), TODAY.plus(2, ChronoUnit.DAYS));
+        journal.snapshot(Arrays.asList(ended, upcoming));
+
+        Map<Long, Reservation> recovered = reopen(4096, 100);
+
+        assertEquals("Only the upcoming reservation should be recovered", Collections.singleton(2L),
+                recovered.keySet());
+
+    }
+
+    private ReservationJournal open(int capacity, int snapshotInterval) throws IOException {
+        ReservationJournal journal = new ReservationJournal(directory, capacity, snapshotInterval);
+        journal.open();
+        return journal;
+    }
+
+    private Map<Long, Reservation> reopen(int capacity, int snapshotInterval) throws IOException {
+        journal.close();
+        journal = open(capacity, snapshotInterval);
+        List<Reservation> reservations = journal.getReservations();
+        return reservations.stream().collect(Collectors.toMap(Reservation::getId, Function.identity()));
+    }
+
+    private static Reservation createReservation(Long id, Instant startDate, Instant endDate) {
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate);
+        reservation.setId(id);
+        reservation.setVersion(1L);
+        reservation.setSiteId(1L + id % 3);
+        return reservation;
+    }
+
+}
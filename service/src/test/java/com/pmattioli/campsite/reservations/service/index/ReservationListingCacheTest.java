@@ -0,0 +1,120 @@
+package com.pmattioli.campsite.reservations.service.index;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+import com.pmattioli.campsite.reservations.data.repo.Reservation;
+import com.pmattioli.campsite.reservations.util.ReservationTestUtil;
+
+public class ReservationListingCacheTest {
+
+    private static final Instant START_DATE_UTC = Instant.parse("2018-05-12T00:00:00Z");
+
+    private final ReservationListingCache listingCache = new ReservationListingCache(2, 60);
+
+    private final List<Instant> loadedStartDates = new ArrayList<>();
+
+    private final Reservation existingReservation = createReservation(1L, START_DATE_UTC.plus(1, ChronoUnit.DAYS),
+            START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+
+    private List<Reservation> storedReservations = Collections.singletonList(existingReservation);
+
+    private final BiFunction<Instant, Instant, List<Reservation>> loader = (startDate, endDate) -> {
+        loadedStartDates.add(startDate);
+        return storedReservations;
+    };
+
+    @Test
+    public void testRangesWithinTheSameDaysShareEntry() {
+
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(10, ChronoUnit.DAYS), 1L, loader);
+        List<Reservation> reservations = listingCache.get(START_DATE_UTC.plus(2, ChronoUnit.HOURS),
+                START_DATE_UTC.plus(10, ChronoUnit.DAYS), 1L, loader);
+
+        assertEquals("Listing should be loaded once", Collections.singletonList(START_DATE_UTC), loadedStartDates);
+        assertEquals("Wrong reservations", Collections.singletonList(existingReservation), reservations);
+        assertEquals("Wrong hit count", 1L, listingCache.getHitCount());
+        assertEquals("Wrong miss count", 1L, listingCache.getMissCount());
+    }
+
+    @Test
+    public void testCachedReservationsAreFilteredByExactRange() {
+
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(10, ChronoUnit.DAYS), 1L, loader);
+
+        assertEquals("Reservation ending before the range shouldn't be listed", Collections.emptyList(),
+                listingCache.get(START_DATE_UTC.plus(3, ChronoUnit.DAYS), START_DATE_UTC.plus(10, ChronoUnit.DAYS),
+                        1L, loader));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvictedWhenFull() {
+
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(1, ChronoUnit.DAYS), 1L, loader);
+        listingCache.get(START_DATE_UTC.plus(1, ChronoUnit.DAYS), START_DATE_UTC.plus(2, ChronoUnit.DAYS), 1L, loader);
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(1, ChronoUnit.DAYS), 1L, loader);
+        listingCache.get(START_DATE_UTC.plus(2, ChronoUnit.DAYS), START_DATE_UTC.plus(3, ChronoUnit.DAYS), 1L, loader);
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(1, ChronoUnit.DAYS), 1L, loader);
+
+        assertEquals("Wrong cache size", 2, listingCache.getSize());
+        assertEquals("Recently used entry should be kept", 2L, listingCache.getHitCount());
+    }
+
+    @Test
+    public void testExpiredEntriesAreReloaded() {
+
+        ReservationListingCache expiringCache = new ReservationListingCache(2, 0);
+
+        expiringCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 1L, loader);
+        expiringCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 1L, loader);
+
+        assertEquals("Expired entry should be reloaded", 2, loadedStartDates.size());
+    }
+
+    @Test
+    public void testEntryIsReloadedWhenCalendarVersionChanges() {
+
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 1L, loader);
+
+        // Written by another instance, which bumped the calendar version
+        Reservation updatedReservation = createReservation(1L, START_DATE_UTC.plus(1, ChronoUnit.DAYS),
+                START_DATE_UTC.plus(3, ChronoUnit.DAYS));
+        updatedReservation.setVersion(2L);
+        storedReservations = Collections.singletonList(updatedReservation);
+
+        List<Reservation> reservations =
+                listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 2L, loader);
+
+        assertEquals("Listing should be reloaded", 2, loadedStartDates.size());
+        assertEquals("Wrong version", 2L, reservations.get(0).getVersion());
+        assertEquals("Wrong hit count", 0L, listingCache.getHitCount());
+    }
+
+    @Test
+    public void testEntryLoadedForOlderVersionDoesNotReplaceNewerOne() {
+
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 2L, loader);
+        // A request that read the version before the last write finishes loading last
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 1L, loader);
+        listingCache.get(START_DATE_UTC, START_DATE_UTC.plus(5, ChronoUnit.DAYS), 2L, loader);
+
+        assertEquals("Entry for the newest version should be kept", 1L, listingCache.getHitCount());
+    }
+
+    private static Reservation createReservation(final Long id, final Instant startDate, final Instant endDate) {
+        Reservation reservation = ReservationTestUtil.createReservation(startDate, endDate,
+                ReservationTestUtil.createUser("Florencia", "Prieto", "florencia.prieto@disney.com"));
+        reservation.setId(id);
+        reservation.setVersion(1L);
+        return reservation;
+    }
+
+}
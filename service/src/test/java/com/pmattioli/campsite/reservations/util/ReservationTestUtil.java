@@ -39,6 +39,7 @@ public class ReservationTestUtil {
                 originalReservation.getEndDate(), originalReservation.getUser());
         staleReservation.setId(originalReservation.getId());
         staleReservation.setVersion(originalReservation.getVersion());
+        staleReservation.setSiteId(originalReservation.getSiteId());
         return staleReservation;
     }
 }